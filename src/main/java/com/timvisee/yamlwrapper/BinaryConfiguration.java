@@ -0,0 +1,430 @@
+package com.timvisee.yamlwrapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Configuration stored in a compact tagged binary format, for fast hand-offs between processes.
+ * Each value is written as a type tag followed by its data, so loading it needs no parsing or type resolution at all.
+ * Maps, lists, sets, arrays, byte arrays, strings, booleans, integers, longs, big integers, floats, doubles and dates
+ * keep their types, which covers all values YAML is loaded as. Other values can't be stored, and fail to save rather
+ * than being loaded back as something else.
+ * <p>
+ * The string form of this configuration, used by {@link #saveToString()} and {@link #loadFromString(String)}, is the
+ * binary data encoded as Base64.
+ */
+public class BinaryConfiguration extends FileConfiguration {
+
+    /**
+     * Magic bytes at the start of the binary format.
+     */
+    private static final int MAGIC = 0x59574201;
+
+    /**
+     * Tag of null values.
+     */
+    private static final int NULL = 0;
+
+    /**
+     * Tag of false values.
+     */
+    private static final int FALSE = 1;
+
+    /**
+     * Tag of true values.
+     */
+    private static final int TRUE = 2;
+
+    /**
+     * Tag of integer values.
+     */
+    private static final int INT = 3;
+
+    /**
+     * Tag of long values.
+     */
+    private static final int LONG = 4;
+
+    /**
+     * Tag of double values.
+     */
+    private static final int DOUBLE = 5;
+
+    /**
+     * Tag of string values.
+     */
+    private static final int STRING = 6;
+
+    /**
+     * Tag of list values.
+     */
+    private static final int LIST = 7;
+
+    /**
+     * Tag of map values and sections.
+     */
+    private static final int MAP = 8;
+
+    /**
+     * Tag of big integer values.
+     */
+    private static final int BIG_INTEGER = 9;
+
+    /**
+     * Tag of float values.
+     */
+    private static final int FLOAT = 10;
+
+    /**
+     * Tag of date values.
+     */
+    private static final int DATE = 11;
+
+    /**
+     * Tag of byte array values.
+     */
+    private static final int BYTES = 12;
+
+    /**
+     * Tag of set values.
+     */
+    private static final int SET = 13;
+
+    /**
+     * Tag of object array values.
+     */
+    private static final int ARRAY = 14;
+
+    /**
+     * Maximum number of bytes or elements allocated before they're read.
+     * Larger strings and collections grow while they're read, so a corrupt size fails at the end of the input instead
+     * of allocating storage for data that isn't there.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Constructor.
+     */
+    public BinaryConfiguration() {
+        super();
+    }
+
+    /**
+     * Create a deep copy of this binary configuration, without parsing it again.
+     *
+     * @return Copy of this configuration.
+     */
+    @Override
+    public BinaryConfiguration copy() {
+        return copyInto(new BinaryConfiguration());
+    }
+
+    @Override
+    public void load(InputStream stream) throws IOException {
+        // Make sure the input stream is not null
+        if (stream == null)
+            return;
+
+        // Read the values, and close the stream
+        final Object input;
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(stream))) {
+            if (data.readInt() != MAGIC)
+                throw new IOException("Not a binary configuration");
+            input = readValue(data);
+        }
+
+        // Load the values
+        if (input instanceof Map)
+            loadDocument((Map<?, ?>) input);
+    }
+
+    /**
+     * Load a binary configuration from the given Base64 encoded string.
+     *
+     * @param contents Base64 encoded binary configuration.
+     */
+    @Override
+    public void loadFromString(String contents) {
+        // Make sure the contents are not null
+        if (contents == null)
+            return;
+
+        // Decode and load the configuration
+        try {
+            load(new ByteArrayInputStream(Base64.getMimeDecoder().decode(contents)));
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void save(OutputStream stream) throws IOException {
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(stream));
+        data.writeInt(MAGIC);
+        writeSection(this, data);
+        data.flush();
+    }
+
+    /**
+     * Save the binary configuration to a Base64 encoded string.
+     *
+     * @return Base64 encoded binary configuration.
+     */
+    @Override
+    public String saveToString() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            save(out);
+        } catch (IOException e) {
+            // Writing to a byte array only fails for values that can't be stored
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * Write the given section as a map.
+     *
+     * @param section Section to write.
+     * @param out     Output to write to.
+     * @throws IOException Throws if failed to write.
+     */
+    static void writeSection(ConfigurationSection section, DataOutput out) throws IOException {
+        out.writeByte(MAP);
+        final SectionList children = section.getChildren();
+        if (children == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(children.size());
+        for (int i = 0; i < children.size(); i++) {
+            final ConfigurationSection child = children.get(i);
+            writeString(child.getKey(), out);
+            if (child.getChildren() != null)
+                writeSection(child, out);
+            else
+                writeValue(child.getRawValue(), out);
+        }
+    }
+
+    /**
+     * Write the given value with its type tag.
+     *
+     * @param value Value to write.
+     * @param out   Output to write to.
+     * @throws IOException Throws if failed to write, or if the value has a type that can't be stored.
+     */
+    static void writeValue(Object value, DataOutput out) throws IOException {
+        if (value == null)
+            out.writeByte(NULL);
+        else if (value instanceof ConfigurationSection) {
+            // List element sections, which hold an empty map if they don't hold anything else
+            final ConfigurationSection section = (ConfigurationSection) value;
+            if (section.getChildren() != null || section.getRawValue() == null)
+                writeSection(section, out);
+            else
+                writeValue(section.getRawValue(), out);
+        } else if (value instanceof Boolean)
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeString(value.toString(), out);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list)
+                writeValue(element, out);
+        } else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(String.valueOf(entry.getKey()), out);
+                writeValue(entry.getValue(), out);
+            }
+        } else if (value instanceof Set) {
+            final Set<?> set = (Set<?>) value;
+            out.writeByte(SET);
+            out.writeInt(set.size());
+            for (Object element : set)
+                writeValue(element, out);
+        } else if (value instanceof byte[]) {
+            final byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Object[]) {
+            final Object[] array = (Object[]) value;
+            out.writeByte(ARRAY);
+            out.writeInt(array.length);
+            for (Object element : array)
+                writeValue(element, out);
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            out.writeByte(STRING);
+            writeString(value.toString(), out);
+        } else
+            throw new IOException("Can't store value of type " + value.getClass().getName());
+    }
+
+    /**
+     * Write the given string as its length and UTF-8 bytes.
+     *
+     * @param string String to write.
+     * @param out    Output to write to.
+     * @throws IOException Throws if failed to write.
+     */
+    static void writeString(String string, DataOutput out) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a value with its type tag.
+     *
+     * @param in Input to read from.
+     * @return The value.
+     * @throws IOException Throws if failed to read, or if the data is invalid.
+     */
+    static Object readValue(DataInput in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case STRING:
+                return readString(in);
+            case BIG_INTEGER:
+                return new BigInteger(readString(in));
+            case DATE:
+                return new Date(in.readLong());
+            case LIST: {
+                final int size = readSize(in);
+                final List<Object> list = new ArrayList<>(Math.min(size, CHUNK_SIZE));
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(in));
+                return list;
+            }
+            case SET: {
+                final int size = readSize(in);
+                final Set<Object> set = new LinkedHashSet<>(Math.min(size, CHUNK_SIZE) * 4 / 3 + 1);
+                for (int i = 0; i < size; i++)
+                    set.add(readValue(in));
+                return set;
+            }
+            case BYTES:
+                return readBytes(in, readSize(in));
+            case ARRAY: {
+                final int size = readSize(in);
+                final List<Object> array = new ArrayList<>(Math.min(size, CHUNK_SIZE));
+                for (int i = 0; i < size; i++)
+                    array.add(readValue(in));
+                return array.toArray();
+            }
+            case MAP: {
+                final int size = readSize(in);
+                final Map<String, Object> map = new LinkedHashMap<>(Math.min(size, CHUNK_SIZE) * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    final String key = readString(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("Invalid value tag " + tag);
+        }
+    }
+
+    /**
+     * Read a string as its length and UTF-8 bytes.
+     *
+     * @param in Input to read from.
+     * @return The string.
+     * @throws IOException Throws if failed to read, or if the data is invalid.
+     */
+    static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in, readSize(in)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the given number of bytes.
+     * The bytes are read in chunks, so storage is only allocated for bytes that are actually there.
+     *
+     * @param in   Input to read from.
+     * @param size Number of bytes to read.
+     * @return The bytes.
+     * @throws IOException Throws if failed to read, or if the input ends before all bytes are read.
+     */
+    private static byte[] readBytes(DataInput in, int size) throws IOException {
+        byte[] bytes = new byte[Math.min(size, CHUNK_SIZE)];
+        in.readFully(bytes);
+        while (bytes.length < size) {
+            final int read = bytes.length;
+            bytes = Arrays.copyOf(bytes, (int) Math.min(size, read * 2L));
+            in.readFully(bytes, read, bytes.length - read);
+        }
+        return bytes;
+    }
+
+    /**
+     * Read the size of a string or collection.
+     * The size isn't trusted for allocating storage, see {@link #CHUNK_SIZE}.
+     *
+     * @param in Input to read from.
+     * @return The size.
+     * @throws IOException Throws if failed to read, or if the size is invalid.
+     */
+    private static int readSize(DataInput in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0)
+            throw new IOException("Invalid size " + size);
+        return size;
+    }
+}
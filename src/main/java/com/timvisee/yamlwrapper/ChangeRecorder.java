@@ -0,0 +1,25 @@
+package com.timvisee.yamlwrapper;
+
+/**
+ * Receiver of the modifications made to a configuration, see {@link Configuration#addChangeRecorder(ChangeRecorder)}.
+ * Modified sections are reported while a modification is made, and are committed once the modification or the
+ * outermost batch it's part of completes.
+ */
+interface ChangeRecorder {
+
+    /**
+     * Called when a section is added, removed or gets a new value.
+     * A section may be reported multiple times for a single modification, and the sub-sections of a section that is
+     * replaced or removed aren't always reported separately.
+     *
+     * @param section The modified section, which may be detached from the configuration already.
+     * @param subtree True if sub-sections of the section may have been removed or replaced as well, without being
+     *                reported separately.
+     */
+    void changed(ConfigurationSection section, boolean subtree);
+
+    /**
+     * Called when the modification or batch that the reported sections are part of is complete.
+     */
+    void committed();
+}
@@ -1,7 +1,82 @@
 package com.timvisee.yamlwrapper;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
 public class Configuration extends ConfigurationSection {
 
+    /**
+     * Flat index mapping the full path of each section in this configuration to the section.
+     * Null if the path index isn't enabled.
+     */
+    private Map<String, ConfigurationSection> pathIndex;
+
+    /**
+     * Secondary value indexes by their path pattern.
+     * Null if no value index is declared.
+     */
+    private Map<String, ValueIndex> valueIndexes;
+
+    /**
+     * Whether this configuration is compacted after it's loaded.
+     */
+    private boolean compactStorage = false;
+
+    /**
+     * Interner used to deduplicate the keys of sections in this configuration, or null to not intern keys.
+     */
+    private KeyInterner keyInterner;
+
+    /**
+     * Whether maps in lists are loaded as list element sections.
+     */
+    private boolean listSectionsEnabled = false;
+
+    /**
+     * Whether this configuration is frozen, and can't be modified anymore.
+     */
+    private boolean frozen = false;
+
+    /**
+     * Number of modifications made to this configuration.
+     */
+    private int modCount = 0;
+
+    /**
+     * Number of batches that are currently being applied to this configuration.
+     */
+    private int batchDepth = 0;
+
+    /**
+     * Whether this configuration has been modified in the current batch.
+     */
+    private boolean batchModified = false;
+
+    /**
+     * Recorders receiving the modifications of this configuration, or null if there are none.
+     */
+    private List<ChangeRecorder> changeRecorders;
+
+    /**
+     * Listeners of this configuration, or null if no listener was ever added.
+     */
+    private ListenerRegistry listeners;
+
+    /**
+     * Cached conversions of the values of sections in this configuration, by section and conversion key.
+     * Null if nothing was ever cached. This is kept here rather than in each section, so sections don't pay for a
+     * cache they don't use. Only accessed while synchronized, as frozen configurations may be read by multiple threads.
+     */
+    private Map<ConfigurationSection, Map<Object, Object>> conversions;
+
     /**
      * Constructor.
      */
@@ -9,28 +84,636 @@ public class Configuration extends ConfigurationSection {
         super(null, "", null);
     }
 
-    // /*
-    //  * Get a list of values
-    //  * @return List of values
-    //  */
-    // public Map<String, Object> getValues() {
-    //     Map<String, Object> out = new LinkedHashMap<String, Object>();
+    /**
+     * Check whether the flat path index is enabled for this configuration.
+     *
+     * @return True if the path index is enabled, false if not.
+     */
+    public boolean isPathIndexEnabled() {
+        return this.pathIndex != null;
+    }
+
+    /**
+     * Enable or disable the flat path index for this configuration.
+     * The index maps the full path of every section to the section itself, so sections and values can be looked up
+     * with a single hash lookup regardless of their depth. The index is built when it's enabled, and is maintained
+     * while values and sections are set or created.
+     *
+     * @param enabled True to enable the path index, false to disable it.
+     * @throws UnsupportedOperationException Throws if the configuration is frozen.
+     */
+    public void setPathIndexEnabled(boolean enabled) {
+        // Make sure the configuration can be modified, as frozen configurations may be read by multiple threads
+        checkModifiable();
+
+        // Disable the index
+        if (!enabled) {
+            this.pathIndex = null;
+            return;
+        }
+
+        // Build the index if it isn't enabled yet, directly from the tree as enabling it doesn't change any values
+        if (this.pathIndex == null) {
+            this.pathIndex = new HashMap<>();
+            final SectionList children = getChildren();
+            if (children != null)
+                for (ConfigurationSection child : children)
+                    walk(child, true, false);
+        }
+    }
+
+    /**
+     * Declare a secondary value index for the sections matching the given path pattern.
+     * The index maps the values of these sections to the sections themselves, so sections can be found by their value
+     * with {@link #findSections(String, Object)} in constant time instead of scanning the tree. The index is built when
+     * it's declared, and is maintained while values are set and the configuration is reloaded.
+     * <p>
+     * Only scalar values are indexed, and values are compared using {@link Object#equals(Object)}. Note that this
+     * means a number that is loaded as {@link Integer} doesn't match the same number as {@link Long}.
+     *
+     * @param pattern Path pattern of the sections to index, see {@link PathQuery}.
+     * @throws UnsupportedOperationException Throws if the configuration is frozen.
+     */
+    public void addValueIndex(String pattern) {
+        // Make sure the configuration can be modified, as frozen configurations may be read by multiple threads
+        checkModifiable();
+
+        // Make sure the index isn't declared yet
+        final PathQuery query = PathQuery.compile(pattern);
+        if (this.valueIndexes == null)
+            this.valueIndexes = new LinkedHashMap<>();
+        if (this.valueIndexes.containsKey(query.getPattern()))
+            return;
+
+        // Build the index
+        final ValueIndex index = new ValueIndex(query);
+        query.stream(this).forEach(section -> index.add(section, section.getRawValue()));
+        this.valueIndexes.put(query.getPattern(), index);
+    }
+
+    /**
+     * Remove the secondary value index for the given path pattern.
+     *
+     * @param pattern Path pattern the index was declared with.
+     * @return True if the index was removed, false if there was no index for the given pattern.
+     * @throws UnsupportedOperationException Throws if the configuration is frozen.
+     */
+    public boolean removeValueIndex(String pattern) {
+        // Make sure the configuration can be modified
+        checkModifiable();
+
+        // Make sure any index is declared
+        if (this.valueIndexes == null || pattern == null)
+            return false;
+
+        // Remove the index
+        final boolean removed = this.valueIndexes.remove(PathQuery.compile(pattern).getPattern()) != null;
+        if (this.valueIndexes.isEmpty())
+            this.valueIndexes = null;
+        return removed;
+    }
+
+    /**
+     * Get the path patterns of the declared secondary value indexes.
+     *
+     * @return List of path patterns.
+     */
+    public List<String> getValueIndexes() {
+        return this.valueIndexes != null ? new ArrayList<>(this.valueIndexes.keySet()) : new ArrayList<>();
+    }
+
+    /**
+     * Find the sections matching the given path pattern that hold the given value.
+     * The sections are looked up in the value index declared for the pattern. If no index is declared for it, the
+     * sections matching the pattern are scanned instead.
+     *
+     * @param pattern Path pattern of the sections, see {@link PathQuery}.
+     * @param value   Scalar value to find.
+     * @return Sections holding the given value.
+     */
+    public List<ConfigurationSection> findSections(String pattern, Object value) {
+        // Look up the sections in the index
+        final PathQuery query = PathQuery.compile(pattern);
+        final ValueIndex index = this.valueIndexes != null ? this.valueIndexes.get(query.getPattern()) : null;
+        if (index != null)
+            return index.find(value);
+
+        // Scan the sections matching the pattern
+        if (value == null)
+            return new ArrayList<>();
+        return query.stream(this)
+            .filter(section -> section.getChildren() == null && value.equals(section.get("")))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Find the paths of the sections matching the given path pattern that hold the given value.
+     * See {@link #findSections(String, Object)}.
+     *
+     * @param pattern Path pattern of the sections, see {@link PathQuery}.
+     * @param value   Scalar value to find.
+     * @return Paths of the sections holding the given value.
+     */
+    public List<String> findPaths(String pattern, Object value) {
+        return findSections(pattern, value).stream()
+            .map(ConfigurationSection::getPath)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Check whether compact storage is enabled for this configuration.
+     *
+     * @return True if compact storage is enabled, false if not.
+     */
+    public boolean isCompactStorage() {
+        return this.compactStorage;
+    }
+
+    /**
+     * Enable or disable compact storage for this configuration.
+     * If enabled, the configuration is compacted using {@link #compact()} each time it's loaded, which trims its
+     * internal storage and deduplicates keys and values. This is useful for large configurations that are mostly read.
+     *
+     * @param compactStorage True to enable compact storage, false to disable it.
+     * @throws UnsupportedOperationException Throws if the configuration is frozen.
+     */
+    public void setCompactStorage(boolean compactStorage) {
+        checkModifiable();
+        this.compactStorage = compactStorage;
+    }
+
+    /**
+     * Get the key interner used for the keys of sections in this configuration.
+     *
+     * @return Key interner, or null if keys aren't interned.
+     */
+    public KeyInterner getKeyInterner() {
+        return this.keyInterner;
+    }
+
+    /**
+     * Set the key interner used for the keys of sections in this configuration.
+     * Keys of sections that are created or loaded afterwards are interned with it. Use {@link KeyInterner#global()}
+     * to share keys across all configurations, or a separate instance per loader.
+     *
+     * @param keyInterner Key interner, or null to not intern keys.
+     * @throws UnsupportedOperationException Throws if the configuration is frozen.
+     */
+    public void setKeyInterner(KeyInterner keyInterner) {
+        checkModifiable();
+        this.keyInterner = keyInterner;
+    }
+
+    /**
+     * Check whether maps in lists are loaded as list element sections.
+     *
+     * @return True if list element sections are enabled, false if not.
+     */
+    public boolean isListSectionsEnabled() {
+        return this.listSectionsEnabled;
+    }
+
+    /**
+     * Enable or disable loading maps in lists as list element sections.
+     * If enabled, maps inside list values are converted to sections when the configuration is loaded. These sections
+     * can be accessed with index paths like {@code routes[42].host}, which are resolved in constant time, and can be
+     * found by the value of a field with {@link #findListElement(String, String, Object)}. When the configuration is
+     * saved, the sections are converted back to maps.
+     *
+     * @param listSectionsEnabled True to enable list element sections, false to disable them.
+     * @throws UnsupportedOperationException Throws if the configuration is frozen.
+     */
+    public void setListSectionsEnabled(boolean listSectionsEnabled) {
+        checkModifiable();
+        this.listSectionsEnabled = listSectionsEnabled;
+    }
+
+    /**
+     * Check whether this configuration is frozen.
+     *
+     * @return True if this configuration is frozen, false if not.
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    /**
+     * Freeze this configuration, so it can't be modified anymore.
+     * Any attempt to modify a frozen configuration throws an {@link UnsupportedOperationException}. A frozen
+     * configuration can safely be shared and read by multiple threads, once it has been published to them. Use
+     * {@link #copy()} or {@link #overlay()} to get a modifiable configuration based on it.
+     * Internal lookup structures are built eagerly when freezing, so reads never modify them afterwards.
+     */
+    public void freeze() {
+        // Build the lookup indexes of all sections
+        final Deque<ConfigurationSection> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            final ConfigurationSection current = pending.pop();
+            final SectionList children = current.getChildren();
+            if (children != null) {
+                children.buildIndex();
+                for (ConfigurationSection child : children)
+                    pending.push(child);
+            } else
+                for (ConfigurationSection element : getElements(current.getRawValue()))
+                    pending.push(element);
+        }
+
+        this.frozen = true;
+    }
+
+    /**
+     * Create a deep copy of this configuration, including its settings.
+     * The copy is never frozen.
+     *
+     * @return Copy of this configuration.
+     */
+    @Override
+    public Configuration copy() {
+        return copyInto(new Configuration());
+    }
+
+    /**
+     * Create an overlay on top of this configuration.
+     * The overlay resolves all values through this configuration, but values that are set in the overlay are stored
+     * in the overlay only. This makes the overlay cheap to create, and its memory usage proportional to the values it
+     * overrides. Changes made to this configuration are visible through the overlay, unless they're overridden.
+     *
+     * @return Overlay configuration.
+     */
+    public LayeredConfiguration overlay() {
+        final LayeredConfiguration overlay = new LayeredConfiguration(this);
+        overlay.setKeyInterner(this.keyInterner);
+        overlay.setCacheEnabled(false);
+        return overlay;
+    }
+
+    /**
+     * Copy the settings and contents of this configuration into the given empty configuration.
+     *
+     * @param target Configuration to copy into.
+     * @param <T>    Configuration type.
+     * @return The given configuration.
+     */
+    <T extends Configuration> T copyInto(T target) {
+        copySettingsInto(target);
+        target.copyFrom(this);
+        return target;
+    }
+
+    /**
+     * Copy the settings of this configuration into the given configuration, without its contents.
+     *
+     * @param target Configuration to copy into.
+     * @param <T>    Configuration type.
+     * @return The given configuration.
+     */
+    <T extends Configuration> T copySettingsInto(T target) {
+        target.setKeyInterner(this.keyInterner);
+        target.setCompactStorage(this.compactStorage);
+        target.setListSectionsEnabled(this.listSectionsEnabled);
+        target.setPathIndexEnabled(isPathIndexEnabled());
+        for (String pattern : getValueIndexes())
+            target.addValueIndex(pattern);
+        return target;
+    }
+
+    /**
+     * Set a value, as a single modification of this configuration.
+     * See {@link ConfigurationSection#set(String, Object)}.
+     *
+     * @param path  Path of the value.
+     * @param value The value.
+     */
+    @Override
+    public void set(String path, Object value) {
+        beginBatch();
+        try {
+            super.set(path, value);
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Remove the section at the given path, as a single modification of this configuration.
+     * See {@link ConfigurationSection#remove(String, boolean)}.
+     *
+     * @param path  Path of the section to remove.
+     * @param prune True to also remove parent sections that become empty.
+     * @return True if a section was removed, false if there was no section at the given path.
+     */
+    @Override
+    public boolean remove(String path, boolean prune) {
+        beginBatch();
+        try {
+            return super.remove(path, prune);
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Get a section from the flat path index.
+     *
+     * @param path Full canonical path of the section.
+     * @return The section, or null if there's no section at the given path.
+     */
+    ConfigurationSection getIndexedSection(String path) {
+        return this.pathIndex.get(path);
+    }
+
+    /**
+     * Called when a section is attached to the tree of this configuration.
+     *
+     * @param section The attached section, including any of its child sections.
+     */
+    void onNodeAdded(ConfigurationSection section) {
+        recordChange(section, false);
+        modified();
+
+        // Add the section and its children to the indexes
+        if (this.pathIndex != null || this.valueIndexes != null)
+            walk(section, true, true);
+    }
+
+    /**
+     * Called when a section is detached from the tree of this configuration.
+     *
+     * @param section The detached section, including any of its child sections.
+     */
+    void onNodeRemoved(ConfigurationSection section) {
+        recordChange(section, true);
+        modified();
+
+        // Remove the section and its children from the indexes
+        if (this.pathIndex != null || this.valueIndexes != null)
+            walk(section, false, true);
+    }
+
+    /**
+     * Called when the value of a section in this configuration is replaced.
+     *
+     * @param section  The section.
+     * @param previous The previous raw value.
+     * @param value    The new raw value.
+     */
+    void onValueChanged(ConfigurationSection section, Object previous, Object value) {
+        if (this.changeRecorders != null)
+            recordChange(section, !getElements(previous).isEmpty() || !getElements(value).isEmpty());
+        modified();
+
+        // Update the value indexes for the section
+        if (this.valueIndexes != null) {
+            for (ValueIndex index : this.valueIndexes.values()) {
+                index.remove(section, previous);
+                index.add(section, value);
+            }
+        }
+
+        // Update the indexes for list element sections that are replaced
+        if (this.pathIndex != null || this.valueIndexes != null) {
+            for (ConfigurationSection element : getElements(previous))
+                walk(element, false, true);
+            for (ConfigurationSection element : getElements(value))
+                walk(element, true, true);
+        }
+    }
+
+    /**
+     * Begin a batch of modifications.
+     * Modifications made until the batch ends count as a single modification. Batches may be nested.
+     */
+    void beginBatch() {
+        this.batchDepth++;
+    }
+
+    /**
+     * End a batch of modifications.
+     */
+    void endBatch() {
+        // Wait for the outermost batch to end
+        if (--this.batchDepth > 0)
+            return;
+
+        // Count the batch as a single modification
+        if (this.batchModified) {
+            this.batchModified = false;
+            this.modCount++;
+            commitChanges();
+        }
+    }
+
+    /**
+     * Count a modification of this configuration, or mark the current batch as modified.
+     */
+    private void modified() {
+        if (this.batchDepth > 0)
+            this.batchModified = true;
+        else {
+            this.modCount++;
+            commitChanges();
+        }
+    }
+
+    /**
+     * Add a recorder receiving the modifications made to this configuration.
+     *
+     * @param recorder The recorder.
+     */
+    void addChangeRecorder(ChangeRecorder recorder) {
+        if (this.changeRecorders == null)
+            this.changeRecorders = new ArrayList<>(1);
+        this.changeRecorders.add(recorder);
+    }
 
-    //     // Get all the values
-    //     out.putAll(this.config.getValues());
+    /**
+     * Remove a recorder that was added before.
+     *
+     * @param recorder The recorder.
+     */
+    void removeChangeRecorder(ChangeRecorder recorder) {
+        if (this.changeRecorders != null && this.changeRecorders.remove(recorder) && this.changeRecorders.isEmpty())
+            this.changeRecorders = null;
+    }
 
-    //     // TODO: Finish this bellow
-    //     Configuration root = getRoot();
-    //     if (root != null && root.options().copyDefaults()) {
-    //         ConfigurationSection defaults = getDefaultSection();
+    /**
+     * Set the executor that listeners of this configuration are notified on.
+     * By default, listeners are notified on the thread that modified the configuration, once the modification or batch
+     * is complete. Use an asynchronous executor so slow listeners don't block writers.
+     *
+     * @param executor The executor.
+     */
+    public void setListenerExecutor(Executor executor) {
+        if (this.listeners == null)
+            this.listeners = new ListenerRegistry();
+        this.listeners.setExecutor(executor);
+    }
 
-    //         if (defaults != null) {
-    //             out.putAll(defaults.getValues(deep));
-    //         }
-    //     }
+    /**
+     * Register a listener for the given full path pattern.
+     * See {@link ConfigurationSection#addListener(String, ConfigurationListener)}.
+     *
+     * @param query    Query of the full path pattern.
+     * @param listener The listener.
+     */
+    void registerListener(PathQuery query, ConfigurationListener listener) {
+        // Start recording changes when the first listener is added
+        if (this.listeners == null)
+            this.listeners = new ListenerRegistry();
+        if (this.listeners.isEmpty())
+            addChangeRecorder(this.listeners);
+        this.listeners.add(query, listener);
+    }
 
-    //     mapChildrenValues(out, this, deep);
+    /**
+     * Remove all registrations of the given listener.
+     *
+     * @param listener The listener.
+     * @return True if the listener was registered.
+     */
+    boolean unregisterListener(ConfigurationListener listener) {
+        // Stop recording changes when the last listener is removed
+        if (this.listeners == null || !this.listeners.remove(listener))
+            return false;
+        if (this.listeners.isEmpty())
+            removeChangeRecorder(this.listeners);
+        return true;
+    }
+
+    /**
+     * Report a modified section to the change recorders.
+     *
+     * @param section The modified section.
+     * @param subtree True if sub-sections of the section may have been replaced as well.
+     */
+    private void recordChange(ConfigurationSection section, boolean subtree) {
+        if (this.changeRecorders != null)
+            for (ChangeRecorder recorder : this.changeRecorders)
+                recorder.changed(section, subtree);
+    }
+
+    /**
+     * Commit the reported modifications to the change recorders.
+     * All recorders are committed even if one of them fails, the failure is thrown afterwards.
+     */
+    private void commitChanges() {
+        // Make sure there are any recorders
+        if (this.changeRecorders == null)
+            return;
+
+        // Commit each recorder, collecting the failures
+        RuntimeException failure = null;
+        for (ChangeRecorder recorder : this.changeRecorders) {
+            try {
+                recorder.committed();
+            } catch (RuntimeException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
 
-    //     return out;
-    // }
+    /**
+     * Get the number of modifications made to this configuration.
+     * This number changes each time a section is added, removed or changed, and can be used to invalidate caches.
+     *
+     * @return Modification count.
+     */
+    int getModCount() {
+        return this.modCount;
+    }
+
+    /**
+     * Get a cached conversion of the value of the given section.
+     *
+     * @param section Section holding the value.
+     * @param key     Key of the conversion.
+     * @return Cached conversion, or null if it isn't cached.
+     */
+    synchronized Object getConversion(ConfigurationSection section, Object key) {
+        final Map<Object, Object> cached = this.conversions != null ? this.conversions.get(section) : null;
+        return cached != null ? cached.get(key) : null;
+    }
+
+    /**
+     * Cache a conversion of the value of the given section, until it's dropped.
+     * Sections are weakly referenced, so removed sections don't keep their conversions alive.
+     *
+     * @param section   Section holding the value.
+     * @param key       Key of the conversion.
+     * @param converted The converted value.
+     */
+    synchronized void putConversion(ConfigurationSection section, Object key, Object converted) {
+        if (this.conversions == null)
+            this.conversions = new WeakHashMap<>();
+        this.conversions.computeIfAbsent(section, s -> new HashMap<>(2)).put(key, converted);
+    }
+
+    /**
+     * Drop the cached conversions of the value of the given section.
+     *
+     * @param section Section holding the value.
+     */
+    synchronized void dropConversions(ConfigurationSection section) {
+        if (this.conversions != null)
+            this.conversions.remove(section);
+    }
+
+    /**
+     * Get the modification stamp of this configuration, and of any configurations its values are resolved through.
+     * The stamp changes each time any of these configurations is modified.
+     *
+     * @return Modification stamp, or -1 if modifications can't be tracked.
+     */
+    long getModificationStamp() {
+        return this.modCount;
+    }
+
+    /**
+     * Add or remove the given section and all its child sections to or from the path index and the value indexes.
+     *
+     * @param section Section to walk.
+     * @param add     True to add the sections to the index, false to remove them.
+     * @param values  True to also update the value indexes, false to only update the path index.
+     */
+    private void walk(ConfigurationSection section, boolean add, boolean values) {
+        final Deque<ConfigurationSection> pending = new ArrayDeque<>();
+        pending.push(section);
+        while (!pending.isEmpty()) {
+            final ConfigurationSection current = pending.pop();
+
+            // Add or remove the current section
+            if (this.pathIndex != null) {
+                if (add)
+                    this.pathIndex.put(current.getPath(), current);
+                else
+                    this.pathIndex.remove(current.getPath(), current);
+            }
+
+            // Add or remove the value of the current section
+            final SectionList children = current.getChildren();
+            if (values && this.valueIndexes != null && children == null) {
+                for (ValueIndex index : this.valueIndexes.values()) {
+                    if (add)
+                        index.add(current, current.getRawValue());
+                    else
+                        index.remove(current, current.getRawValue());
+                }
+            }
+
+            // Walk the child sections, or the list element sections
+            if (children != null)
+                for (ConfigurationSection child : children)
+                    pending.push(child);
+            else
+                for (ConfigurationSection element : getElements(current.getRawValue()))
+                    pending.push(element);
+        }
+    }
 }
@@ -0,0 +1,468 @@
+package com.timvisee.yamlwrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch of changes to apply to a configuration section in a single pass.
+ * See {@link ConfigurationSection#batch(java.util.function.Consumer)}.
+ * <p>
+ * Changes are recorded first, and are grouped by the keys of their paths. When the batch is applied, each section
+ * along a shared path prefix is resolved only once. The result is the same as applying the changes one by one, in the
+ * order they were recorded.
+ * <p>
+ * Keys of list elements like {@code list[0]} are resolved to the list element sections. Batches that remove list
+ * elements, or that change both a list and its elements, are applied one by one instead, as the keys of the elements
+ * depend on the order of these changes.
+ */
+public class ConfigurationBatch {
+
+    /**
+     * Operation that sets a value.
+     */
+    private static final int SET = 0;
+
+    /**
+     * Operation that creates a section.
+     */
+    private static final int CREATE = 1;
+
+    /**
+     * Operation that removes a section.
+     */
+    private static final int REMOVE = 2;
+
+    /**
+     * Root node of the recorded changes, for the section the batch is applied to.
+     */
+    private final Node root = new Node(null);
+
+    /**
+     * Sequence number of the last recorded change.
+     */
+    private int sequence = 0;
+
+    /**
+     * All recorded changes, in recorded order.
+     */
+    private final List<Operation> changes = new ArrayList<>();
+
+    /**
+     * Whether the changes must be applied one by one, because list element sections are removed, or a list element
+     * key and the key of the list holding it are both changed.
+     */
+    private boolean sequential = false;
+
+    /**
+     * Constructor.
+     */
+    ConfigurationBatch() {
+    }
+
+    /**
+     * Set a value.
+     * See {@link ConfigurationSection#set(String, Object)}.
+     *
+     * @param path  Path of the value.
+     * @param value The actual value.
+     * @return This batch.
+     */
+    public ConfigurationBatch set(String path, Object value) {
+        record(path, SET, value);
+        return this;
+    }
+
+    /**
+     * Create a new configuration section.
+     * See {@link ConfigurationSection#createSection(String)}.
+     *
+     * @param path Path of the new section.
+     * @return This batch.
+     */
+    public ConfigurationBatch createSection(String path) {
+        record(path, CREATE, null);
+        return this;
+    }
+
+    /**
+     * Remove a section.
+     * See {@link ConfigurationSection#remove(String)}.
+     *
+     * @param path Path of the section to remove.
+     * @return This batch.
+     */
+    public ConfigurationBatch remove(String path) {
+        record(path, REMOVE, null);
+        return this;
+    }
+
+    /**
+     * Check whether this batch has any recorded changes.
+     *
+     * @return True if this batch is empty, false if not.
+     */
+    public boolean isEmpty() {
+        return this.sequence == 0;
+    }
+
+    /**
+     * Record a change.
+     *
+     * @param path  Path of the change.
+     * @param type  Operation type.
+     * @param value Operation value.
+     */
+    private void record(String path, int type, Object value) {
+        // Make sure the path is not null, and doesn't remove the section itself
+        if (path == null || (type == REMOVE && path.replace('.', ' ').trim().isEmpty()))
+            return;
+
+        // Find or create the node for the path, skipping empty keys like the section itself does
+        final int sequence = ++this.sequence;
+        Node node = this.root;
+        node.touch(sequence, type);
+        String last = null;
+        for (String key : path.split("\\.")) {
+            key = key.trim();
+            if (key.isEmpty())
+                continue;
+            this.sequential |= node.aliases(key);
+            node = node.child(key);
+            node.touch(sequence, type);
+            last = key;
+        }
+
+        // Removing a list element moves the elements after it, so later changes may refer to other elements
+        if (type == REMOVE && isListElementKey(last))
+            this.sequential = true;
+
+        // Add the operation
+        final Operation operation = new Operation(path, sequence, type, value);
+        this.changes.add(operation);
+        if (node.operations == null)
+            node.operations = new ArrayList<>(1);
+        node.operations.add(operation);
+        if (type != CREATE)
+            node.replaced = sequence;
+        if (type == REMOVE)
+            node.removed = sequence;
+    }
+
+    /**
+     * Apply the recorded changes to the given section.
+     *
+     * @param section Section to apply the changes to.
+     */
+    void apply(ConfigurationSection section) {
+        // Apply the changes one by one if they can't be grouped by key
+        if (this.sequential) {
+            for (Operation change : this.changes) {
+                if (change.type == SET)
+                    section.set(change.path, change.value);
+                else if (change.type == CREATE)
+                    section.createSection(change.path);
+                else
+                    section.remove(change.path);
+            }
+            return;
+        }
+
+        // Apply the operations on the section itself, it can't be removed
+        if (this.root.operations != null)
+            for (Operation operation : this.root.operations)
+                if (operation.type == SET)
+                    section.set("", operation.value);
+
+        // Apply the changes to the child sections
+        applyChildren(section, this.root, this.root.replaced);
+    }
+
+    /**
+     * Apply the changes of the given node, that were recorded after the given sequence number, to a child section.
+     *
+     * @param parent Parent section of the child section.
+     * @param key    Key of the child section.
+     * @param node   Node holding the changes.
+     * @param after  Sequence number after which changes are applied.
+     */
+    private static void apply(ConfigurationSection parent, String key, Node node, int after) {
+        // Resolve the section once, create it first if any change creates it even if it's removed again afterwards,
+        // because creating it replaces the value of the parent section just like applying the changes one by one
+        ConfigurationSection section = find(parent, key);
+        if (section == null && node.firstCreateAfter(after) != Integer.MAX_VALUE)
+            section = parent.getOrAddChild(key);
+
+        // Apply the operations on the section itself
+        if (node.operations != null) {
+            for (Operation operation : node.operations) {
+                if (operation.sequence <= after)
+                    continue;
+                if (operation.type == REMOVE) {
+                    if (section != null)
+                        section.getParent().removeChild(section);
+                    section = null;
+                    continue;
+                }
+                if (section == null)
+                    section = getOrAdd(parent, key);
+                if (operation.type == SET)
+                    section.set("", operation.value);
+            }
+        }
+
+        // Changes to child sections recorded before this section was replaced or removed, are overwritten by it
+        final int floor = Math.max(after, node.replaced);
+        if (node.children == null || node.last <= floor)
+            return;
+
+        // Only create the section if any child section has to be created
+        if (section == null) {
+            if (node.firstCreateAfter(floor) == Integer.MAX_VALUE)
+                return;
+            section = getOrAdd(parent, key);
+        }
+        applyChildren(section, node, floor);
+    }
+
+    /**
+     * Find the child section or the list element section with the given key, like setting a value resolves it.
+     *
+     * @param parent Parent section.
+     * @param key    Key of the child section, or of the list element like {@code list[0]}.
+     * @return The section, or null if it doesn't exist.
+     */
+    private static ConfigurationSection find(ConfigurationSection parent, String key) {
+        final ConfigurationSection section = parent.findChild(key);
+        return section != null ? section : parent.resolveListElement(key);
+    }
+
+    /**
+     * Find the child section or the list element section with the given key, or add a child section if neither exists.
+     *
+     * @param parent Parent section.
+     * @param key    Key of the child section, or of the list element like {@code list[0]}.
+     * @return The section.
+     */
+    private static ConfigurationSection getOrAdd(ConfigurationSection parent, String key) {
+        final ConfigurationSection section = find(parent, key);
+        return section != null ? section : parent.getOrAddChild(key);
+    }
+
+    /**
+     * Check whether the given key refers to a list element, like {@code list[0]}.
+     *
+     * @param key The key, or null.
+     * @return True if the key has an index.
+     */
+    private static boolean isListElementKey(String key) {
+        return key != null && key.endsWith("]") && key.lastIndexOf('[') > 0;
+    }
+
+    /**
+     * Apply the changes of the child nodes of the given node to the given section.
+     *
+     * @param section Section to apply the changes to.
+     * @param node    Node holding the child nodes.
+     * @param after   Sequence number after which changes are applied.
+     */
+    private static void applyChildren(ConfigurationSection section, Node node, int after) {
+        // Make sure there are child nodes
+        if (node.children == null)
+            return;
+
+        // Collect the child nodes with changes, ordered by when they would be added to the section
+        final List<Node> children = new ArrayList<>(node.children.size());
+        for (Node child : node.children.values()) {
+            if (child.last > after) {
+                child.order = child.firstCreateAfter(Math.max(after, child.removed));
+                children.add(child);
+            }
+        }
+        children.sort(Comparator.comparingInt(child -> child.order));
+
+        // Apply the changes, new sections are added in the same order as when applying them one by one
+        for (Node child : children)
+            apply(section, child.key, child, after);
+    }
+
+    /**
+     * Node holding the recorded changes for a path.
+     */
+    private static final class Node {
+
+        /**
+         * Key of this path, or null for the root node.
+         */
+        private final String key;
+
+        /**
+         * Operations on this path, in recorded order.
+         */
+        private List<Operation> operations;
+
+        /**
+         * Nodes for child paths by key.
+         */
+        private Map<String, Node> children;
+
+        /**
+         * Sequence number of the last change recorded on this path or any child path.
+         */
+        private int last;
+
+        /**
+         * Sequence numbers of the changes recorded on this path or any child path that create the section, ascending.
+         */
+        private int[] creates = new int[1];
+
+        /**
+         * Number of sequence numbers in the creates array.
+         */
+        private int createCount;
+
+        /**
+         * Sequence number of the last change that replaced the value on this path, or removed it.
+         */
+        private int replaced;
+
+        /**
+         * Sequence number of the last change that removed this path.
+         */
+        private int removed;
+
+        /**
+         * Order in which this node is applied among its siblings.
+         */
+        private int order;
+
+        /**
+         * Keys of the lists that child list element keys refer to, or null if there are none.
+         */
+        private Set<String> lists;
+
+        /**
+         * Constructor.
+         *
+         * @param key Key of this path, or null for the root node.
+         */
+        private Node(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Register a change recorded on this path or any child path.
+         *
+         * @param sequence Sequence number of the change.
+         * @param type     Operation type of the change.
+         */
+        private void touch(int sequence, int type) {
+            this.last = sequence;
+            if (type != REMOVE) {
+                if (this.createCount == this.creates.length)
+                    this.creates = Arrays.copyOf(this.creates, this.createCount << 1);
+                this.creates[this.createCount++] = sequence;
+            }
+        }
+
+        /**
+         * Get the sequence number of the first change that creates the section after the given sequence number.
+         *
+         * @param after Sequence number to search after.
+         * @return Sequence number of the change, or {@link Integer#MAX_VALUE} if there is none.
+         */
+        private int firstCreateAfter(int after) {
+            // Binary search for the first sequence number above the given one
+            int low = 0;
+            int high = this.createCount;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (this.creates[mid] <= after)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low < this.createCount ? this.creates[low] : Integer.MAX_VALUE;
+        }
+
+        /**
+         * Check whether the given child key and another child key refer to the same list, one being the key of the list
+         * and the other the key of one of its elements. Such keys can't be grouped separately, as changing the list
+         * replaces its elements.
+         *
+         * @param key Child key to check, which is registered for the following checks.
+         * @return True if the key aliases another child key.
+         */
+        private boolean aliases(String key) {
+            // Register and check the list of list element keys
+            if (isListElementKey(key)) {
+                final String list = key.substring(0, key.lastIndexOf('[')).trim();
+                if (this.lists == null)
+                    this.lists = new HashSet<>();
+                this.lists.add(list);
+                return this.children != null && this.children.containsKey(list);
+            }
+
+            // Check whether any list element key refers to this list
+            return this.lists != null && this.lists.contains(key);
+        }
+
+        /**
+         * Get or create the node for the child path with the given key.
+         *
+         * @param key Key of the child path.
+         * @return Child node.
+         */
+        private Node child(String key) {
+            if (this.children == null)
+                this.children = new LinkedHashMap<>();
+            return this.children.computeIfAbsent(key, Node::new);
+        }
+    }
+
+    /**
+     * Recorded operation.
+     */
+    private static final class Operation {
+
+        /**
+         * Path of the operation.
+         */
+        private final String path;
+
+        /**
+         * Sequence number of the operation.
+         */
+        private final int sequence;
+
+        /**
+         * Operation type.
+         */
+        private final int type;
+
+        /**
+         * Operation value.
+         */
+        private final Object value;
+
+        /**
+         * Constructor.
+         *
+         * @param path     Path of the operation.
+         * @param sequence Sequence number of the operation.
+         * @param type     Operation type.
+         * @param value    Operation value.
+         */
+        private Operation(String path, int sequence, int type, Object value) {
+            this.path = path;
+            this.sequence = sequence;
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.timvisee.yamlwrapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Cache of parsed YAML configuration files, shared by the components of a process that load the same files.
+ * Files are parsed once, and the resulting frozen configuration is shared by everyone loading the file, until the file
+ * is modified. Files are identified by their path, modification time and size.
+ * <p>
+ * When multiple threads load the same file at the same time, it's only parsed once, and all of them get the same
+ * configuration. The least recently used files are evicted when the cache is full.
+ */
+public class ConfigurationCache {
+
+    /**
+     * Default maximum number of cached files.
+     */
+    private static final int DEFAULT_MAX_ENTRIES = 64;
+
+    /**
+     * Global configuration cache instance.
+     */
+    private static final ConfigurationCache GLOBAL = new ConfigurationCache(DEFAULT_MAX_ENTRIES);
+
+    /**
+     * Maximum number of cached files.
+     */
+    private final int maxEntries;
+
+    /**
+     * Cached entries by normalized absolute path, in least recently used order.
+     */
+    private final Map<Path, Entry> entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+            return size() > ConfigurationCache.this.maxEntries;
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries Maximum number of cached files.
+     */
+    public ConfigurationCache(int maxEntries) {
+        this.maxEntries = Math.max(maxEntries, 1);
+    }
+
+    /**
+     * Get the global configuration cache, shared by the whole process.
+     *
+     * @return Global configuration cache.
+     */
+    public static ConfigurationCache global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Load a YAML configuration from the given file, or get it from the cache if the file hasn't been modified.
+     * The returned configuration is frozen, and is shared with everyone loading the same file. Use
+     * {@link Configuration#copy()} or {@link Configuration#overlay()} to get a modifiable configuration.
+     *
+     * @param path Path of the file to load.
+     * @return Frozen configuration.
+     * @throws IOException Throws if failed to load the configuration file, or if the YAML in it is invalid.
+     */
+    public YamlConfiguration load(Path path) throws IOException {
+        try {
+            return loadAsync(path, Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Load a YAML configuration from the given file in the background, or get it from the cache if the file hasn't
+     * been modified. This can be used to parse files before they're needed.
+     * See {@link #load(Path)}.
+     *
+     * @param path     Path of the file to load.
+     * @param executor Executor to parse the file on, if it isn't cached or being parsed already.
+     * @return Future completing with the frozen configuration, or with an {@link UncheckedIOException} if failed to
+     * load the configuration file or if the YAML in it is invalid. The future also completes exceptionally if the
+     * executor rejects the load.
+     */
+    public CompletableFuture<YamlConfiguration> loadAsync(Path path, Executor executor) {
+        // Identify the file by its modification time and size
+        final Path key = path.toAbsolutePath().normalize();
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        } catch (IOException e) {
+            final CompletableFuture<YamlConfiguration> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new UncheckedIOException(e));
+            return failed;
+        }
+        final long modified = attributes.lastModifiedTime().toMillis();
+        final long size = attributes.size();
+
+        // Get the cached entry, or register a new one so concurrent loads wait for it
+        final Entry entry;
+        synchronized (this) {
+            final Entry cached = this.entries.get(key);
+            if (cached != null && cached.modified == modified && cached.size == size)
+                return cached.future;
+            entry = new Entry(modified, size);
+            this.entries.put(key, entry);
+        }
+
+        // Parse the file, and forget failed loads so they're retried, invalid YAML fails the load instead of caching
+        // an empty configuration
+        try {
+            executor.execute(() -> {
+                try {
+                    final YamlConfiguration config = new YamlConfiguration();
+                    config.loadStrictly(key);
+                    config.freeze();
+                    entry.future.complete(config);
+                } catch (IOException e) {
+                    invalidate(key, entry);
+                    entry.future.completeExceptionally(new UncheckedIOException(e));
+                } catch (RuntimeException e) {
+                    invalidate(key, entry);
+                    entry.future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // The executor rejected the load, so nobody would ever complete the entry
+            invalidate(key, entry);
+            entry.future.completeExceptionally(e);
+        }
+        return entry.future;
+    }
+
+    /**
+     * Remove the given file from the cache, so it's parsed again when it's loaded next time.
+     *
+     * @param path Path of the file.
+     */
+    public synchronized void invalidate(Path path) {
+        this.entries.remove(path.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Remove the given entry from the cache, if it's still cached.
+     *
+     * @param key   Normalized absolute path of the file.
+     * @param entry The entry.
+     */
+    private synchronized void invalidate(Path key, Entry entry) {
+        this.entries.remove(key, entry);
+    }
+
+    /**
+     * Remove all files from the cache.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Get the number of cached files, including files that are being parsed.
+     *
+     * @return Number of cached files.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Cached file.
+     */
+    private static final class Entry {
+
+        /**
+         * Modification time of the file in milliseconds.
+         */
+        private final long modified;
+
+        /**
+         * Size of the file in bytes.
+         */
+        private final long size;
+
+        /**
+         * Future completing with the parsed configuration.
+         */
+        private final CompletableFuture<YamlConfiguration> future = new CompletableFuture<>();
+
+        /**
+         * Constructor.
+         *
+         * @param modified Modification time of the file in milliseconds.
+         * @param size     Size of the file in bytes.
+         */
+        private Entry(long modified, long size) {
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+}
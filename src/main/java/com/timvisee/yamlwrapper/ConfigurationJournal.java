@@ -0,0 +1,552 @@
+package com.timvisee.yamlwrapper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Journaled persistence of a file configuration, for configurations that are modified often.
+ * Instead of rewriting the whole file for each modification, modifications are appended as compact records to a
+ * journal next to the file, named like the file with {@code .journal} appended. The file itself is only rewritten when
+ * the journal is compacted, which happens when the journal grows beyond the compaction size, when the compaction
+ * interval has passed, or when {@link #compact()} is called.
+ * <pre>{@code
+ * YamlConfiguration config = new YamlConfiguration();
+ * try (ConfigurationJournal journal = ConfigurationJournal.open(config, Paths.get("data.yml"))) {
+ *     config.set("users.alice.role", "admin");
+ * }
+ * }</pre>
+ * A record is written when a modification, or the outermost batch it's part of, is complete. It holds the new value of
+ * each modified section, so multiple changes to the same section in a batch result in a single record. Values are
+ * stored in the tagged format of {@link BinaryConfiguration}.
+ * <p>
+ * When a journal is opened, the file is loaded and the journal is replayed on top of it. Records that were written
+ * partially, for example because the process crashed while writing them, end the journal and are discarded along with
+ * anything after them, as are records that are invalid. Records replace values as a whole, so replaying a journal that was already compacted into the file gives the same result.
+ * <p>
+ * Journals aren't thread safe. Compaction reads the whole configuration, so it must not run concurrently with
+ * modifications of the configuration.
+ */
+public class ConfigurationJournal implements Closeable {
+
+    /**
+     * Policy for syncing the journal to the storage device.
+     */
+    public enum SyncPolicy {
+
+        /**
+         * Sync after each record that is written, so no completed modification is lost if the system crashes.
+         */
+        ALWAYS,
+
+        /**
+         * Sync at most once per sync interval, and when the journal is closed.
+         */
+        INTERVAL,
+
+        /**
+         * Never sync explicitly, and leave writing the journal to the storage device to the operating system.
+         */
+        NEVER
+    }
+
+    /**
+     * Magic bytes at the start of the journal.
+     */
+    private static final int MAGIC = 0x59574A01;
+
+    /**
+     * Size of the journal header.
+     */
+    private static final int HEADER_SIZE = 4;
+
+    /**
+     * Record type setting the value of a section.
+     */
+    private static final int SET = 1;
+
+    /**
+     * Record type removing a section.
+     */
+    private static final int REMOVE = 2;
+
+    /**
+     * Default size of the journal in bytes at which it's compacted.
+     */
+    private static final long DEFAULT_COMPACTION_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * The journaled configuration.
+     */
+    private final FileConfiguration configuration;
+
+    /**
+     * Path of the configuration file.
+     */
+    private final Path file;
+
+    /**
+     * Path of the journal file.
+     */
+    private final Path journalFile;
+
+    /**
+     * Channel to append records to, or null if the journal is closed.
+     */
+    private FileChannel channel;
+
+    /**
+     * Recorder receiving the modifications of the configuration.
+     */
+    private final ChangeRecorder recorder = new ChangeRecorder() {
+        @Override
+        public void changed(ConfigurationSection section, boolean subtree) {
+            ConfigurationJournal.this.changed.add(section.getPath());
+        }
+
+        @Override
+        public void committed() {
+            try {
+                writeChanges();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write configuration journal " + journalFile, e);
+            }
+        }
+    };
+
+    /**
+     * Paths of the sections modified since the last record was written.
+     */
+    private final Set<String> changed = new LinkedHashSet<>();
+
+    /**
+     * Buffer for the payload of a single record.
+     */
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+    /**
+     * Buffer for the records that are written at once.
+     */
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+    /**
+     * Policy for syncing the journal to the storage device.
+     */
+    private SyncPolicy syncPolicy = SyncPolicy.ALWAYS;
+
+    /**
+     * Minimum time between syncs in nanoseconds, for the interval sync policy.
+     */
+    private long syncInterval = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Time of the last sync, from {@link System#nanoTime()}.
+     */
+    private long lastSync = System.nanoTime();
+
+    /**
+     * Size of the journal in bytes at which it's compacted, or 0 to not compact it by size.
+     */
+    private long compactionSize = DEFAULT_COMPACTION_SIZE;
+
+    /**
+     * Time between compactions in nanoseconds, or 0 to not compact the journal periodically.
+     */
+    private long compactionInterval = 0;
+
+    /**
+     * Time of the last compaction, from {@link System#nanoTime()}.
+     */
+    private long lastCompaction = System.nanoTime();
+
+    /**
+     * Constructor.
+     *
+     * @param configuration The journaled configuration.
+     * @param file          Path of the configuration file.
+     */
+    private ConfigurationJournal(FileConfiguration configuration, Path file) {
+        this.configuration = configuration;
+        this.file = file;
+        this.journalFile = file.resolveSibling(file.getFileName() + ".journal");
+    }
+
+    /**
+     * Open the journal of the given configuration file.
+     * The file is loaded into the given configuration if it exists, and the journal is replayed on top of it. All
+     * modifications made to the configuration afterwards are written to the journal, until it's closed.
+     *
+     * @param configuration Configuration to load the file into, which should be empty.
+     * @param file          Path of the configuration file.
+     * @return The opened journal.
+     * @throws IOException Throws if failed to load the file, or to open or replay the journal.
+     */
+    public static ConfigurationJournal open(FileConfiguration configuration, Path file) throws IOException {
+        final ConfigurationJournal journal = new ConfigurationJournal(configuration, file);
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * Get the policy for syncing the journal to the storage device.
+     *
+     * @return Sync policy.
+     */
+    public SyncPolicy getSyncPolicy() {
+        return this.syncPolicy;
+    }
+
+    /**
+     * Set the policy for syncing the journal to the storage device.
+     * Defaults to {@link SyncPolicy#ALWAYS}.
+     *
+     * @param syncPolicy Sync policy.
+     */
+    public void setSyncPolicy(SyncPolicy syncPolicy) {
+        this.syncPolicy = syncPolicy;
+    }
+
+    /**
+     * Set the minimum time between syncs, for the {@link SyncPolicy#INTERVAL} policy.
+     * Defaults to one second.
+     *
+     * @param interval Minimum time between syncs.
+     * @param unit     Time unit of the interval.
+     */
+    public void setSyncInterval(long interval, TimeUnit unit) {
+        this.syncInterval = unit.toNanos(interval);
+    }
+
+    /**
+     * Set the size of the journal at which it's compacted.
+     * Defaults to 16 MiB.
+     *
+     * @param bytes Size in bytes, or 0 to not compact the journal by its size.
+     */
+    public void setCompactionSize(long bytes) {
+        this.compactionSize = bytes;
+    }
+
+    /**
+     * Set the time after which the journal is compacted when the next record is written.
+     * Disabled by default.
+     *
+     * @param interval Time between compactions, or 0 to not compact the journal periodically.
+     * @param unit     Time unit of the interval.
+     */
+    public void setCompactionInterval(long interval, TimeUnit unit) {
+        this.compactionInterval = unit.toNanos(interval);
+    }
+
+    /**
+     * Get the current size of the journal.
+     *
+     * @return Size in bytes.
+     * @throws IOException Throws if failed to get the size.
+     */
+    public long size() throws IOException {
+        checkOpen();
+        return this.channel.size();
+    }
+
+    /**
+     * Load the configuration file and replay the journal, then start recording modifications.
+     *
+     * @throws IOException Throws if failed to load the file, or to open or replay the journal.
+     */
+    private void load() throws IOException {
+        // Load the configuration file
+        if (Files.exists(this.file))
+            this.configuration.load(this.file);
+
+        // Replay the journal, and remember where the last complete record ends
+        long end = 0;
+        if (Files.exists(this.journalFile) && Files.size(this.journalFile) >= HEADER_SIZE) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.journalFile)))) {
+                if (in.readInt() != MAGIC)
+                    throw new IOException("Not a configuration journal: " + this.journalFile);
+                end = replay(in, Files.size(this.journalFile));
+            }
+        }
+
+        // Open the journal for appending, dropping partially written records
+        this.channel = FileChannel.open(this.journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        if (end < HEADER_SIZE) {
+            this.channel.truncate(0);
+            this.channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC));
+        } else
+            this.channel.truncate(end);
+        this.channel.position(this.channel.size());
+
+        // Record modifications from now on
+        this.configuration.addChangeRecorder(this.recorder);
+    }
+
+    /**
+     * Replay the records of the journal as a single batch.
+     * Replaying stops at the first record that is partially written, or that is invalid, as the journal ends there.
+     *
+     * @param in   Input of the journal, after its header.
+     * @param size Size of the journal in bytes.
+     * @return Position in the journal after the last complete record.
+     * @throws IOException Throws if failed to read the journal.
+     */
+    private long replay(DataInputStream in, long size) throws IOException {
+        long end = HEADER_SIZE;
+        final CRC32 checksum = new CRC32();
+        this.configuration.beginBatch();
+        try {
+            while (true) {
+                // Read the next record, stop at the end or at a partially written record
+                final byte[] record;
+                final long expected;
+                try {
+                    final int length = in.readInt();
+                    expected = in.readInt() & 0xFFFFFFFFL;
+                    if (length <= 0 || length > size - end - 8)
+                        break;
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(record, 0, record.length);
+                if (checksum.getValue() != expected)
+                    break;
+
+                // Apply the record, a record that can't be parsed ends the journal as well
+                try {
+                    apply(new DataInputStream(new ByteArrayInputStream(record)));
+                } catch (IOException | RuntimeException e) {
+                    break;
+                }
+                end += 8 + record.length;
+            }
+        } finally {
+            this.configuration.endBatch();
+        }
+        return end;
+    }
+
+    /**
+     * Apply a single record to the configuration.
+     *
+     * @param in Input of the record.
+     * @throws IOException Throws if the record is invalid.
+     */
+    private void apply(DataInputStream in) throws IOException {
+        final int type = in.readUnsignedByte();
+        final String path = BinaryConfiguration.readString(in);
+        switch (type) {
+            case REMOVE:
+                if (path.isEmpty())
+                    this.configuration.set("", null);
+                else
+                    this.configuration.remove(path);
+                break;
+            case SET:
+                applySet(path, BinaryConfiguration.readValue(in));
+                break;
+            default:
+                throw new IOException("Invalid journal record type " + type + " in " + this.journalFile);
+        }
+    }
+
+    /**
+     * Replace the value of the section at the given path, like the value was loaded from a file.
+     *
+     * @param path  Path of the section.
+     * @param value The new value.
+     */
+    private void applySet(String path, Object value) {
+        // Reset the section, which creates it if it doesn't exist, or resolves the list element the path refers to
+        this.configuration.set(path, null);
+
+        // Load the value into the section in place, so maps become sections
+        final ConfigurationSection section = this.configuration.findSection(path);
+        if (section != null && value != null)
+            section.loadValue(value);
+    }
+
+    /**
+     * Write a record for the sections modified since the last record was written.
+     * Sections of which a parent section was modified as well are covered by the record of their parent.
+     *
+     * @throws IOException Throws if failed to write the record.
+     */
+    private void writeChanges() throws IOException {
+        // Make sure there is anything to write
+        if (this.changed.isEmpty() || this.channel == null)
+            return;
+
+        // Frame the record of each modified section with its length and checksum
+        final DataOutputStream out = new DataOutputStream(this.payload);
+        final CRC32 checksum = new CRC32();
+        this.records.reset();
+        for (String path : this.changed) {
+            if (isParentChanged(path))
+                continue;
+            this.payload.reset();
+            writeRecord(path, out);
+            checksum.reset();
+            checksum.update(this.payload.toByteArray(), 0, this.payload.size());
+            final DataOutputStream frame = new DataOutputStream(this.records);
+            frame.writeInt(this.payload.size());
+            frame.writeInt((int) checksum.getValue());
+            this.payload.writeTo(this.records);
+        }
+        this.changed.clear();
+
+        // Append the records, and sync them according to the sync policy
+        final ByteBuffer buffer = ByteBuffer.wrap(this.records.toByteArray());
+        while (buffer.hasRemaining())
+            this.channel.write(buffer);
+        final long now = System.nanoTime();
+        if (this.syncPolicy == SyncPolicy.ALWAYS
+            || this.syncPolicy == SyncPolicy.INTERVAL && now - this.lastSync >= this.syncInterval) {
+            this.channel.force(false);
+            this.lastSync = now;
+        }
+
+        // Compact the journal if it has grown too large, or the compaction interval has passed
+        if (this.compactionSize > 0 && this.channel.size() >= this.compactionSize
+            || this.compactionInterval > 0 && now - this.lastCompaction >= this.compactionInterval)
+            compact();
+    }
+
+    /**
+     * Check whether a parent section of the section at the given path was modified as well.
+     *
+     * @param path Path of the section.
+     * @return True if a parent section was modified.
+     */
+    private boolean isParentChanged(String path) {
+        if (path.isEmpty())
+            return false;
+        if (this.changed.contains(""))
+            return true;
+        for (int i = 1; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if ((c == '.' || c == '[') && this.changed.contains(path.substring(0, i)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write the record holding the current state of the section at the given path.
+     *
+     * @param path Path of the section.
+     * @param out  Output to write the record to.
+     * @throws IOException Throws if failed to write.
+     */
+    private void writeRecord(String path, DataOutputStream out) throws IOException {
+        final ConfigurationSection section = this.configuration.findSection(path);
+        if (section == null) {
+            out.writeByte(REMOVE);
+            BinaryConfiguration.writeString(path, out);
+            return;
+        }
+        out.writeByte(SET);
+        BinaryConfiguration.writeString(path, out);
+        if (section.getChildren() != null)
+            BinaryConfiguration.writeSection(section, out);
+        else
+            BinaryConfiguration.writeValue(section.getRawValue(), out);
+    }
+
+    /**
+     * Compact the journal, by saving the whole configuration to the file and clearing the journal.
+     * The configuration is saved to a temporary file first, which then replaces the file, so the file is never left
+     * partially written.
+     *
+     * @throws IOException Throws if failed to save the configuration, or to clear the journal.
+     */
+    public void compact() throws IOException {
+        checkOpen();
+
+        // Save the configuration to a temporary file, and make sure it's written before it replaces the file
+        final Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        this.configuration.save(temp);
+        if (this.syncPolicy != SyncPolicy.NEVER) {
+            try (FileChannel written = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                written.force(true);
+            }
+        }
+        try {
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // Clear the journal, the file holds all modifications now
+        this.channel.truncate(HEADER_SIZE);
+        this.channel.position(HEADER_SIZE);
+        if (this.syncPolicy != SyncPolicy.NEVER)
+            this.channel.force(false);
+        this.lastCompaction = System.nanoTime();
+    }
+
+    /**
+     * Sync the journal to the storage device, regardless of the sync policy.
+     *
+     * @throws IOException Throws if failed to sync the journal.
+     */
+    public void sync() throws IOException {
+        checkOpen();
+        this.channel.force(false);
+        this.lastSync = System.nanoTime();
+    }
+
+    /**
+     * Stop recording modifications, and close the journal.
+     * The journal is synced first, unless the sync policy is {@link SyncPolicy#NEVER}. It's not compacted.
+     *
+     * @throws IOException Throws if failed to sync or close the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        // Make sure the journal is still open
+        if (this.channel == null)
+            return;
+
+        // Stop recording, and close the journal
+        this.configuration.removeChangeRecorder(this.recorder);
+        try {
+            if (this.syncPolicy != SyncPolicy.NEVER)
+                this.channel.force(false);
+        } finally {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Make sure the journal is open.
+     *
+     * @throws IOException Throws if the journal is closed.
+     */
+    private void checkOpen() throws IOException {
+        if (this.channel == null)
+            throw new IOException("Configuration journal is closed: " + this.journalFile);
+    }
+}
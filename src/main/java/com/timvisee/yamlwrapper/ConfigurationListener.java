@@ -0,0 +1,20 @@
+package com.timvisee.yamlwrapper;
+
+import java.util.List;
+
+/**
+ * Listener that is notified when sections matching a path pattern change.
+ * See {@link ConfigurationSection#addListener(String, ConfigurationListener)}.
+ */
+@FunctionalInterface
+public interface ConfigurationListener {
+
+    /**
+     * Called once the modification or batch in which matching sections were changed is complete.
+     * All changes of a single batch or load are passed at once.
+     *
+     * @param paths Full paths of the changed sections that match the pattern, in the order they were first changed.
+     *              A section that holds matching sub-sections is included when it's removed or replaced as a whole.
+     */
+    void onChange(List<String> paths);
+}
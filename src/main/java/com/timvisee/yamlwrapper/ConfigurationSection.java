@@ -1,23 +1,97 @@
 package com.timvisee.yamlwrapper;
 
+import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class ConfigurationSection {
 
     /**
-     * Parent configuration section.
+     * Conversion of a list value to an int array, or null if any element isn't an integer within the int range.
+     */
+    private static final Function<List<?>, int[]> INT_ARRAY = list -> {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            final Long element = toLong(list.get(i));
+            if (element == null || element != element.intValue())
+                return null;
+            array[i] = element.intValue();
+        }
+        return array;
+    };
+
+    /**
+     * Conversion of a list value to a long array, or null if any element isn't an integer within the long range.
+     */
+    private static final Function<List<?>, long[]> LONG_ARRAY = list -> {
+        final long[] array = new long[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            final Long element = toLong(list.get(i));
+            if (element == null)
+                return null;
+            array[i] = element;
+        }
+        return array;
+    };
+
+    /**
+     * Conversion of a list value to an unmodifiable list of strings.
+     * Strings and primitive values are converted to strings, other elements are kept at their index as null.
+     */
+    private static final Function<List<?>, List<String>> STRING_LIST = list -> {
+        final List<String> strings = new ArrayList<>(list.size());
+        for (Object element : list)
+            if (element instanceof String || element instanceof Number || element instanceof Boolean || element instanceof Character)
+                strings.add(element.toString());
+            else
+                strings.add(null);
+        return Collections.unmodifiableList(strings);
+    };
+
+    /**
+     * Parent configuration section, or null for the root.
+     * Set to null when the section is removed from its tree, see {@link #detach()}.
      */
     private ConfigurationSection parent;
 
+    /**
+     * Root configuration section, cached from the parent.
+     * Reset for the section and all its sub-sections when it's removed from its tree, see {@link #detach()}.
+     */
+    private ConfigurationSection root;
+
+    /**
+     * Depth of this section in the tree, zero for the root.
+     * Reset for the section and all its sub-sections when it's removed from its tree, see {@link #detach()}.
+     */
+    private int depth;
+
     /**
      * Key of the current configuration section.
+     * The key of a list element section changes when an element before it is removed, see {@link #rekey(String)}.
      */
     private String key;
 
+    /**
+     * Cached path of the current configuration section, or null if it isn't computed yet.
+     * Dropped for the section and all its sub-sections when it's re-keyed or removed from its tree, and by
+     * {@link #compact()}, as the path depends on the keys of all parent sections.
+     */
+    private String path;
+
     /**
      * Value of the current configuration section.
      */
@@ -30,9 +104,7 @@ public class ConfigurationSection {
      * @param value Section value.
      */
     public ConfigurationSection(String key, Object value) {
-        this.parent = null;
-        this.key = key;
-        this.value = value;
+        this(null, key, value);
     }
 
     /**
@@ -44,6 +116,8 @@ public class ConfigurationSection {
      */
     public ConfigurationSection(ConfigurationSection parent, String key, Object value) {
         this.parent = parent;
+        this.root = parent != null ? parent.root : this;
+        this.depth = parent != null ? parent.depth + 1 : 0;
         this.key = key;
         this.value = value;
     }
@@ -73,16 +147,23 @@ public class ConfigurationSection {
      * @return Root section.
      */
     public ConfigurationSection getRoot() {
-        // Check whether this section is the root, return it in that case
-        if (isRoot())
-            return this;
+        return this.root;
+    }
 
-        // Return the parent root
-        return this.parent.getRoot();
+    /**
+     * Get the depth of this configuration section in the tree.
+     * The root has a depth of zero, its child sections have a depth of one, and so on.
+     *
+     * @return Section depth.
+     */
+    public int getDepth() {
+        return this.depth;
     }
 
     /**
      * Get the path of the configuration section.
+     * The path is computed once, and is cached until this section or any of its parent sections is re-keyed or
+     * removed from the tree.
      *
      * @return Section path.
      */
@@ -91,22 +172,18 @@ public class ConfigurationSection {
         if (isRoot())
             return "";
 
-        // If the parent configuration section is the root, return the key of the current
-        if (this.parent.isRoot())
-            return this.key;
-
-        // Create a string builder for the section path
-        StringBuilder path = new StringBuilder();
+        // Return the cached path
+        if (this.path != null)
+            return this.path;
 
-        // Append the parent path if his isn't the root
-        if (!isRoot())
-            path.append(this.parent.getPath()).append(".");
-
-        // Append the current path
-        path.append(this.key);
+        // If the parent configuration section is the root, the path is the key of the current section
+        if (this.parent.isRoot())
+            return this.path = this.key;
 
-        // Return the path
-        return path.toString();
+        // Append the current key to the parent path, and cache it, list elements are appended without a separator
+        if (isListElement())
+            return this.path = this.parent.getPath() + this.key;
+        return this.path = this.parent.getPath() + "." + this.key;
     }
 
     /**
@@ -128,6 +205,15 @@ public class ConfigurationSection {
         return this.key;
     }
 
+    /**
+     * Get the raw value of this section, without resolving it.
+     *
+     * @return Raw value.
+     */
+    Object getRawValue() {
+        return this.value;
+    }
+
     /**
      * Get the raw configuration section value of the current configuration section.
      *
@@ -162,12 +248,22 @@ public class ConfigurationSection {
         // Trim the path
         path = path.trim();
 
-        // Is the path leading to this section
-        if (path.equals(""))
-            return this.value;
+        // Is the path leading to this section, create the string of a lazily loaded value when it's first read
+        if (path.equals("")) {
+            final Object value = this.value;
+            if (!(value instanceof SourceSlice))
+                return value;
+
+            // Keep the string, unless the configuration is frozen, as reads of frozen configurations never modify it
+            final String string = value.toString();
+            final Configuration configuration = getConfiguration();
+            if (configuration == null || !configuration.isFrozen())
+                this.value = string;
+            return string;
+        }
 
         // Get the section this path is leading to
-        final ConfigurationSection section = getConfigurationSection(path);
+        final ConfigurationSection section = findSection(path);
 
         // Make sure the section is not null
         if (section == null)
@@ -637,6 +733,149 @@ public class ConfigurationSection {
         return (value instanceof List);
     }
 
+    /**
+     * Get the list value at the given path as an int array.
+     * The list is converted once, and the array is cached until the value is changed. The cached array is shared by
+     * all callers, so it must not be modified. Clone it to get an array that can be modified.
+     *
+     * @param path Path of the value containing the list.
+     * @return Shared int array, or null if the value isn't a list of integers within the int range.
+     */
+    public int[] getIntArray(String path) {
+        return getConvertedList(path, INT_ARRAY);
+    }
+
+    /**
+     * Get the list value at the given path as a long array.
+     * The list is converted once, and the array is cached until the value is changed. The cached array is shared by
+     * all callers, so it must not be modified. Clone it to get an array that can be modified.
+     *
+     * @param path Path of the value containing the list.
+     * @return Shared long array, or null if the value isn't a list of integers within the long range.
+     */
+    public long[] getLongArray(String path) {
+        return getConvertedList(path, LONG_ARRAY);
+    }
+
+    /**
+     * Get the list value at the given path as a list of strings.
+     * Primitive values in the list are converted to strings. Other values are null in the returned list, so each
+     * string keeps the index of its element in the list value.
+     * The list is converted once, and is cached until the value is changed.
+     *
+     * @param path Path of the value containing the list.
+     * @return Unmodifiable list of strings, or an empty list if the value isn't a list.
+     */
+    public List<String> getStringList(String path) {
+        final List<String> list = getConvertedList(path, STRING_LIST);
+        return list != null ? list : Collections.<String>emptyList();
+    }
+
+    /**
+     * Get the list value at the given path as a list of sections.
+     * List element sections are returned as they are, so changes made through them are made in this tree. Other maps
+     * in the list are converted to new sections on each call, which are detached from this tree. Other values are
+     * skipped. The returned list isn't cached, as the sections it holds can be modified.
+     *
+     * @param path Path of the value containing the list.
+     * @return Unmodifiable list of sections, or an empty list if the value isn't a list.
+     */
+    public List<ConfigurationSection> getSectionList(String path) {
+        // Get the list value
+        final Object value = get(path);
+        if (!(value instanceof List) || value instanceof SectionList)
+            return Collections.emptyList();
+
+        // Collect the list element sections, and convert other maps
+        final List<?> list = (List<?>) value;
+        final List<ConfigurationSection> sections = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            final Object element = list.get(i);
+            if (element instanceof ConfigurationSection)
+                sections.add((ConfigurationSection) element);
+            else if (element instanceof Map) {
+                final ConfigurationSection section = new ConfigurationSection(String.valueOf(i), null);
+                section.loadValues((Map<?, ?>) element);
+                sections.add(section);
+            }
+        }
+        return Collections.unmodifiableList(sections);
+    }
+
+    /**
+     * Get the given list element as a long, if it's an integer within the long range.
+     *
+     * @param element List element.
+     * @return The element as long, or null if it isn't an integer within the long range.
+     */
+    private static Long toLong(Object element) {
+        if (element instanceof Integer || element instanceof Long || element instanceof Short || element instanceof Byte)
+            return ((Number) element).longValue();
+        if (element instanceof BigInteger && ((BigInteger) element).bitLength() < 64)
+            return ((BigInteger) element).longValue();
+        return null;
+    }
+
+    /**
+     * Get the list value at the given path converted with the given conversion.
+     * The converted value is cached for the section holding the list, until its value is changed, if the section is
+     * part of a configuration. Conversions must
+     * not return values that callers can use to modify the tree, as they're shared by all callers.
+     * Lists that are modified in place, after being retrieved through {@link #getList(String)}, must be set again
+     * to invalidate the cache.
+     *
+     * @param path       Path of the value containing the list.
+     * @param conversion Conversion of the list.
+     * @param <T>        Converted type.
+     * @return Converted list, or null if the value isn't a list or can't be converted.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T getConvertedList(String path, Function<List<?>, T> conversion) {
+        // Get the list value
+        final Object value = get(path);
+        if (!(value instanceof List) || value instanceof SectionList)
+            return null;
+
+        // Get the cached conversion if this value is held by a section of this tree
+        final ConfigurationSection section = findSection(path);
+        if (section == null || section.value != value)
+            return conversion.apply((List<?>) value);
+        final Object cached = section.getCached(conversion);
+        if (cached != null)
+            return (T) cached;
+
+        // Convert the list and cache it
+        final T converted = conversion.apply((List<?>) value);
+        if (converted != null)
+            section.putCached(conversion, converted);
+        return converted;
+    }
+
+    /**
+     * Get a cached conversion of the value of this section.
+     * Conversions are cached by the configuration this section is part of, so sections don't hold a cache themselves.
+     *
+     * @param key Key of the conversion.
+     * @return Cached conversion, or null if it isn't cached.
+     */
+    private Object getCached(Object key) {
+        final Configuration configuration = getConfiguration();
+        return configuration != null ? configuration.getConversion(this, key) : null;
+    }
+
+    /**
+     * Cache a conversion of the value of this section, until the value is changed.
+     * Nothing is cached if this section isn't part of a configuration.
+     *
+     * @param key       Key of the conversion.
+     * @param converted The converted value.
+     */
+    private void putCached(Object key, Object converted) {
+        final Configuration configuration = getConfiguration();
+        if (configuration != null)
+            configuration.putConversion(this, key, converted);
+    }
+
     /**
      * Return a list of keys that are inside the current configuration section.
      *
@@ -661,19 +900,19 @@ public class ConfigurationSection {
         path = path.trim();
 
         // Make sure this configuration section exists
-        if (!isConfigurationSection(path))
+        if (!hasSection(path))
             return new ArrayList<String>();
 
         // Get the configuration sections to get the keys from
-        final ConfigurationSection section = getConfigurationSection(path);
+        final ConfigurationSection section = findSection(path);
 
         // Make sure the configuration section holds other configuration sections
         if (!section.isHoldingConfigurationSections())
             return new ArrayList<String>();
 
         // Return the list of keys
-        @SuppressWarnings("unchecked") final List<ConfigurationSection> sections = (List<ConfigurationSection>) section.get("");
-        final List<String> keys = new ArrayList<>();
+        final List<ConfigurationSection> sections = section.getChildren();
+        final List<String> keys = new ArrayList<>(sections.size());
 
         // Create a list of keys
         for (ConfigurationSection entry : sections)
@@ -700,6 +939,18 @@ public class ConfigurationSection {
      * @return Configuration section.
      */
     public ConfigurationSection getConfigurationSection(String path) {
+        return findSection(path);
+    }
+
+    /**
+     * Get a configuration section of this tree itself.
+     * Unlike {@link #getConfigurationSection(String)}, this is never overridden, so sections are always resolved in
+     * this tree even for configurations that resolve them through other trees, like {@link LayeredConfiguration}.
+     *
+     * @param path Path of the section.
+     * @return Configuration section, or null if it doesn't exist.
+     */
+    final ConfigurationSection findSection(String path) {
         // Make sure the path param is not null
         if (path == null)
             return null;
@@ -707,40 +958,39 @@ public class ConfigurationSection {
         // Trim the path
         path = path.trim();
 
+        // Is the path locating to this configuration section
+        if (path.equals(""))
+            return this;
+
+        // Use the flat path index of the root configuration if it's available
+        final Configuration configuration = getConfiguration();
+        if (configuration != null && configuration.isPathIndexEnabled() && isCanonicalPath(path))
+            return configuration.getIndexedSection(isRoot() ? path : getPath() + "." + path);
+
+        // Walk the tree to find the section
+        return resolveSection(path);
+    }
+
+    /**
+     * Resolve a configuration section by walking down the tree, without using the path index.
+     *
+     * @param path Trimmed path of the section.
+     * @return Configuration section, or null if it doesn't exist.
+     */
+    private ConfigurationSection resolveSection(String path) {
         // Is the path locating to this configuration section
         if (path.equals(""))
             return this;
 
         // Make sure the value of the current section is set
-        if (!isSet(""))
+        if (this.value == null)
             return null;
 
         // Does the path contain any sub-paths
         if (!path.contains(".")) {
-            // Make sure the path is locating to a configuration section
-            if (!isConfigurationSection(path))
-                return null;
-
-            // Get and return the configuration section
-            if (this.value instanceof List) {
-                // Get the configuration section
-                try {
-                    @SuppressWarnings("unchecked")
-                    List<ConfigurationSection> sections = (List<ConfigurationSection>) this.value;
-                    for (ConfigurationSection section : sections) {
-                        if (section == null)
-                            continue;
-
-                        // Is this the section we are searching for
-                        if (section.getKey().equals(path))
-                            return section;
-                    }
-                } catch (ClassCastException e) {
-                }
-                return null;
-
-            } else
-                return null;
+            // Get and return the configuration section, or the section of a list element
+            final ConfigurationSection section = findChild(path);
+            return section != null ? section : resolveListElement(path);
 
         } else {
             // Get the keys
@@ -757,14 +1007,35 @@ public class ConfigurationSection {
                 return this;
 
             // Get the configuration section
-            ConfigurationSection section = getConfigurationSection(key);
+            ConfigurationSection section = resolveSection(key.trim());
 
             // Make sure the section is not null
             if (section == null)
                 return null;
 
             // Get the value from the child section
-            return section.getConfigurationSection(subPath);
+            return section.resolveSection(subPath.trim());
+        }
+    }
+
+    /**
+     * Resolve the section of a list element, for keys like {@code list[0]}.
+     *
+     * @param key Trimmed key of the list element.
+     * @return Section of the list element, or null if it doesn't exist.
+     */
+    ConfigurationSection resolveListElement(String key) {
+        // Make sure the key has an index
+        final int open = key.lastIndexOf('[');
+        if (open <= 0 || !key.endsWith("]"))
+            return null;
+
+        // Get the section holding the list, and the element in it
+        final ConfigurationSection list = findChild(key.substring(0, open).trim());
+        try {
+            return list != null ? list.getElement(Integer.parseInt(key.substring(open + 1, key.length() - 1).trim())) : null;
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
@@ -806,14 +1077,14 @@ public class ConfigurationSection {
         String key = path;
         String subPath = "";
         if (nodes.length >= 1)
-            key = nodes[0];
+            key = nodes[0].trim();
         if (nodes.length >= 2)
             subPath = nodes[1];
 
         // Is the first key of the path leading to an already existing section
-        if (isConfigurationSection(key)) {
+        if (hasSection(key)) {
             // Get the section
-            final ConfigurationSection section = getConfigurationSection(key);
+            final ConfigurationSection section = findSection(key);
 
             // Are there any sub-keys
             if (subPath.length() == 0) {
@@ -825,32 +1096,9 @@ public class ConfigurationSection {
             return section.createConfigurationSection(subPath);
 
         } else {
-            // Create a section
-            if (this.value instanceof List) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    List<ConfigurationSection> sections = (List<ConfigurationSection>) this.value;
-                    ConfigurationSection section = new ConfigurationSection(this, key, null);
-                    sections.add(section);
-                    this.value = sections;
-
-                    // Are there any sub-keys
-                    if (subPath.length() == 0)
-                        // Return the section
-                        return section;
-
-                    // Create the sub key sections in the section and return the result
-                    return section.createConfigurationSection(subPath);
-
-                } catch (ClassCastException ex) {
-                }
-            }
-
-            // Create a new section
-            final ConfigurationSection section = new ConfigurationSection(this, key, null);
-            List<ConfigurationSection> sections = new ArrayList<ConfigurationSection>();
-            sections.add(section);
-            this.value = sections;
+            // Create a new section, unless the key leads to a list element
+            final ConfigurationSection element = resolveListElement(key);
+            final ConfigurationSection section = element != null ? element : addChild(key);
 
             // Are there any sub-keys
             if (subPath.length() == 0)
@@ -875,6 +1123,7 @@ public class ConfigurationSection {
     /**
      * Set a value.
      * The type of the value is determined automatically.
+     * Setting a null value keeps the section at the given path, use {@link #remove(String)} to remove it.
      *
      * @param path  Path of the value.
      * @param value The actual value.
@@ -889,7 +1138,7 @@ public class ConfigurationSection {
 
         // Is the path leading to this section
         if (path.equals("")) {
-            this.value = value;
+            setValue(value);
             return;
         }
 
@@ -898,40 +1147,555 @@ public class ConfigurationSection {
         String key = path;
         String subPath = "";
         if (nodes.length >= 1)
-            key = nodes[0];
+            key = nodes[0].trim();
         if (nodes.length >= 2)
             subPath = nodes[1];
 
         // Is there any section this key leads to
-        if (isConfigurationSection(key)) {
+        if (hasSection(key)) {
             // Get the section
-            final ConfigurationSection section = getConfigurationSection(key);
+            final ConfigurationSection section = findSection(key);
             section.set(subPath, value);
 
         } else {
-            // Create a section
-            final ConfigurationSection section = new ConfigurationSection(this, key, null);
-            if (this.value instanceof List) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    List<ConfigurationSection> sections = (List<ConfigurationSection>) this.value;
-                    sections.add(section);
-
-                } catch (ClassCastException ex) {
-                    // Create a new section
-                    List<ConfigurationSection> sections = new ArrayList<>();
-                    sections.add(section);
-                    this.value = sections;
+            // Set the value in the list element the key leads to, or create a section and set the sub key and value
+            final ConfigurationSection element = resolveListElement(key);
+            (element != null ? element : addChild(key)).set(subPath, value);
+        }
+    }
+
+    /**
+     * Apply a batch of changes to this section in a single pass.
+     * The changes are recorded by the given consumer first, and are applied afterwards. Sections along shared path
+     * prefixes are resolved only once, and the root configuration handles the batch as a single modification.
+     * <pre>{@code
+     * section.batch(batch -> batch
+     *     .set("a.b", 1)
+     *     .set("a.c", 2));
+     * }</pre>
+     *
+     * @param changes Consumer recording the changes on the given batch.
+     */
+    public void batch(Consumer<ConfigurationBatch> changes) {
+        // Record the changes
+        final ConfigurationBatch batch = new ConfigurationBatch();
+        changes.accept(batch);
+        if (batch.isEmpty())
+            return;
+
+        // Apply the changes as a single batch
+        final Configuration configuration = getConfiguration();
+        if (configuration != null)
+            configuration.beginBatch();
+        try {
+            batch.apply(this);
+        } finally {
+            if (configuration != null)
+                configuration.endBatch();
+        }
+    }
+
+    /**
+     * Load the values of the given map into this section.
+     * Parsers create maps holding the configuration, this converts them to proper sections. Sub-maps are
+     * automatically converted to sub-sections.
+     *
+     * @param values Map of values to load.
+     */
+    void loadValues(Map<?, ?> values) {
+        // Loop through the map entries to convert it
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            // Get the key and value
+            final String key = String.valueOf(entry.getKey());
+            final Object value = entry.getValue();
+
+            // Set the value
+            if (value instanceof Map)
+                createSection(key).loadValues((Map<?, ?>) value);
+            else if (value instanceof List && isListSectionsEnabled()) {
+                final ConfigurationSection section = createSection(key);
+                section.set("", section.toElements((List<?>) value, 0));
+            } else
+                set(key, value);
+        }
+    }
+
+    /**
+     * Load the given value into this section, like {@link #loadValues(Map)} loads the values of a map.
+     * Maps are converted to sub-sections, and maps in lists to list element sections if they're enabled.
+     *
+     * @param value Value to load.
+     */
+    void loadValue(Object value) {
+        if (value instanceof Map)
+            loadValues((Map<?, ?>) value);
+        else if (value instanceof List && isListSectionsEnabled())
+            set("", toElements((List<?>) value, 0));
+        else
+            set("", value);
+    }
+
+    /**
+     * Convert the maps in the given list to list element sections of this section.
+     *
+     * @param list   List to convert.
+     * @param offset Index of the first list element in the list value of this section.
+     * @return List with maps converted to sections, or the given list if it doesn't contain any maps.
+     */
+    private List<?> toElements(List<?> list, int offset) {
+        // Only convert lists holding maps
+        boolean maps = false;
+        for (Object element : list)
+            maps |= element instanceof Map;
+        if (!maps)
+            return list;
+
+        // Convert the maps
+        final List<Object> elements = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            final Object element = list.get(i);
+            if (element instanceof Map) {
+                final ConfigurationSection section = new ConfigurationSection(this, "[" + (offset + i) + "]", null);
+                section.loadValues((Map<?, ?>) element);
+                elements.add(section);
+            } else
+                elements.add(element);
+        }
+        return elements;
+    }
+
+    /**
+     * Check whether maps in lists are loaded as list element sections.
+     *
+     * @return True if list element sections are enabled for the root configuration, false if not.
+     */
+    private boolean isListSectionsEnabled() {
+        final Configuration configuration = getConfiguration();
+        return configuration != null && configuration.isListSectionsEnabled();
+    }
+
+    /**
+     * Check whether this section is an element of a list value, instead of a child section.
+     *
+     * @return True if this section is a list element.
+     */
+    public boolean isListElement() {
+        return this.parent != null && this.key != null && this.key.startsWith("[") && this.parent.getChildren() == null;
+    }
+
+    /**
+     * Get the list element sections in the given raw value.
+     *
+     * @param value Raw value.
+     * @return List element sections, or an empty list if the value doesn't hold any.
+     */
+    static List<ConfigurationSection> getElements(Object value) {
+        // Only lists can hold list element sections
+        if (!(value instanceof List) || value instanceof SectionList)
+            return Collections.emptyList();
+
+        // Collect the sections
+        List<ConfigurationSection> elements = Collections.emptyList();
+        for (Object element : (List<?>) value) {
+            if (element instanceof ConfigurationSection) {
+                if (elements.isEmpty())
+                    elements = new ArrayList<>();
+                elements.add((ConfigurationSection) element);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Get the list element section at the given index of the list value of this section.
+     *
+     * @param index Index of the list element.
+     * @return List element section, or null if there's no section at the given index.
+     */
+    private ConfigurationSection getElement(int index) {
+        if (!(this.value instanceof List) || getChildren() != null)
+            return null;
+        final List<?> list = (List<?>) this.value;
+        if (index < 0 || index >= list.size() || !(list.get(index) instanceof ConfigurationSection))
+            return null;
+        return (ConfigurationSection) list.get(index);
+    }
+
+    /**
+     * Find a list element section by the value of one of its fields.
+     * An index of the list elements by the given field is built once, and is cached until the configuration is
+     * modified.
+     *
+     * @param path  Path of the value containing the list.
+     * @param field Path of the field within the list elements.
+     * @param value Field value to find.
+     * @return The first list element section with the given field value, or null if there is none.
+     */
+    public ConfigurationSection findListElement(String path, String field, Object value) {
+        // Get the section holding the list
+        final ConfigurationSection section = findSection(path);
+        if (section == null || !(section.value instanceof List) || section.getChildren() != null)
+            return null;
+
+        // Get the index if it's still valid, the elements may have been modified since it was built
+        final Configuration configuration = getConfiguration();
+        final int modCount = configuration != null ? configuration.getModCount() : -1;
+        final String cacheKey = "[" + field + "]";
+        FieldIndex index = (FieldIndex) section.getCached(cacheKey);
+        if (index == null || index.modCount != modCount || modCount < 0) {
+            // Build the index
+            index = new FieldIndex(modCount);
+            for (Object element : (List<?>) section.value) {
+                if (element instanceof ConfigurationSection) {
+                    final Object fieldValue = ((ConfigurationSection) element).get(field);
+                    if (fieldValue != null)
+                        index.elements.putIfAbsent(fieldValue, (ConfigurationSection) element);
                 }
-            } else {
-                // Create a new section
-                List<ConfigurationSection> sections = new ArrayList<>();
-                sections.add(section);
-                this.value = sections;
             }
 
-            // Set the sub key and value
-            section.set(subPath, value);
+            // Cache the index, if modifications can be tracked
+            if (modCount >= 0)
+                section.putCached(cacheKey, index);
+        }
+        return index.elements.get(value);
+    }
+
+    /**
+     * Index of list element sections by the value of a field.
+     */
+    private static final class FieldIndex {
+
+        /**
+         * Modification count of the configuration when the index was built.
+         */
+        private final int modCount;
+
+        /**
+         * List element sections by field value.
+         */
+        private final Map<Object, ConfigurationSection> elements = new HashMap<>();
+
+        /**
+         * Constructor.
+         *
+         * @param modCount Modification count of the configuration when the index was built.
+         */
+        private FieldIndex(int modCount) {
+            this.modCount = modCount;
+        }
+    }
+
+    /**
+     * Get the child section with the given key, or add it if it doesn't exist.
+     *
+     * @param key Key of the child section.
+     * @return The child section.
+     */
+    ConfigurationSection getOrAddChild(String key) {
+        final ConfigurationSection section = findChild(key);
+        return section != null ? section : addChild(key);
+    }
+
+    /**
+     * Find the child section with the given key.
+     *
+     * @param key Key of the child section.
+     * @return The child section, or null if it doesn't exist.
+     */
+    ConfigurationSection findChild(String key) {
+        final SectionList sections = getChildren();
+        return sections != null ? sections.find(key) : null;
+    }
+
+    /**
+     * Add a new child section with the given key to this section.
+     * The current value is replaced with a list of sections if this section isn't holding any sections yet.
+     *
+     * @param key Key of the new child section.
+     * @return The new child section.
+     */
+    private ConfigurationSection addChild(String key) {
+        // Make sure the configuration can be modified
+        checkModifiable();
+
+        // Get the list of child sections, replace the current value if it isn't holding sections
+        SectionList sections = getChildren();
+        if (sections == null) {
+            sections = new SectionList();
+            setValue(sections);
+        }
+
+        // Intern the key if the root configuration has a key interner
+        final Configuration configuration = getConfiguration();
+        if (configuration != null && configuration.getKeyInterner() != null)
+            key = configuration.getKeyInterner().intern(key);
+
+        // Create the section and add it
+        final ConfigurationSection section = new ConfigurationSection(this, key, null);
+        sections.add(section);
+
+        // Notify the root configuration
+        if (configuration != null)
+            configuration.onNodeAdded(section);
+
+        return section;
+    }
+
+    /**
+     * Replace the raw value of this section.
+     * The root configuration is notified about any child sections that are detached by this.
+     *
+     * @param value The new value.
+     */
+    private void setValue(Object value) {
+        // Make sure the configuration can be modified
+        checkModifiable();
+
+        // Get the child sections that are about to be detached
+        final Object previous = this.value;
+        final SectionList detached = getChildren();
+
+        // Set the value
+        this.value = value;
+
+        // Drop any cached conversions of the previous value, and notify the root configuration
+        final Configuration configuration = getConfiguration();
+        if (configuration != null) {
+            configuration.dropConversions(this);
+            if (detached != null && detached != value)
+                for (ConfigurationSection section : detached)
+                    configuration.onNodeRemoved(section);
+            configuration.onValueChanged(this, previous, value);
+        }
+
+        // Cut the replaced child sections and list element sections loose from this tree
+        if (detached != null && detached != value)
+            for (ConfigurationSection section : detached)
+                section.detach();
+        final List<ConfigurationSection> elements = getElements(previous);
+        if (!elements.isEmpty()) {
+            final Set<ConfigurationSection> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            kept.addAll(getElements(value));
+            for (ConfigurationSection element : elements)
+                if (!kept.contains(element))
+                    element.detach();
+        }
+    }
+
+    /**
+     * Make sure the configuration this section is part of can be modified.
+     *
+     * @throws UnsupportedOperationException Throws if the configuration is frozen.
+     */
+    void checkModifiable() {
+        final Configuration configuration = getConfiguration();
+        if (configuration != null && configuration.isFrozen())
+            throw new UnsupportedOperationException("Configuration is frozen, use copy() to get a modifiable copy");
+    }
+
+    /**
+     * Get the list of child sections this section is holding.
+     *
+     * @return List of child sections, or null if this section isn't holding any sections.
+     */
+    SectionList getChildren() {
+        return this.value instanceof SectionList ? (SectionList) this.value : null;
+    }
+
+    /**
+     * Get the root configuration this section is part of.
+     *
+     * @return Root configuration, or null if the root section isn't a configuration.
+     */
+    Configuration getConfiguration() {
+        final ConfigurationSection root = getRoot();
+        return root instanceof Configuration ? (Configuration) root : null;
+    }
+
+    /**
+     * Check whether the given trimmed path is in its canonical form.
+     * A canonical path has no empty keys, and no whitespace around its keys.
+     *
+     * @param path Path to check.
+     * @return True if the path is canonical, false if not.
+     */
+    private static boolean isCanonicalPath(String path) {
+        final int length = path.length();
+        for (int i = 0; i < length; i++) {
+            // Keys must not be empty, and must not start or end with whitespace
+            if (path.charAt(i) == '.'
+                && (i == 0 || i == length - 1 || path.charAt(i - 1) <= ' ' || path.charAt(i + 1) <= ' ' || path.charAt(i + 1) == '.'))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove the section at the given path, including its value and all its sub-sections.
+     * Unlike setting a null value, this unlinks the section from its parent completely.
+     *
+     * @param path Path of the section to remove.
+     * @return True if a section was removed, false if there was no section at the given path.
+     */
+    public boolean remove(String path) {
+        return remove(path, false);
+    }
+
+    /**
+     * Remove the section at the given path, including its value and all its sub-sections.
+     * Unlike setting a null value, this unlinks the section from its parent completely.
+     *
+     * @param path  Path of the section to remove.
+     * @param prune True to also remove parent sections that become empty, up to this section.
+     * @return True if a section was removed, false if there was no section at the given path.
+     */
+    public boolean remove(String path, boolean prune) {
+        // Make sure the path is not null
+        if (path == null)
+            return false;
+
+        // Get the section to remove, this section itself can't be removed
+        final ConfigurationSection section = findSection(path);
+        if (section == null || section == this)
+            return false;
+
+        // Remove the section from its parent
+        ConfigurationSection parent = section.parent;
+        if (!parent.removeChild(section))
+            return false;
+
+        // Remove parents that became empty
+        if (prune) {
+            while (parent != this && parent.value == null) {
+                final ConfigurationSection grandparent = parent.parent;
+                grandparent.removeChild(parent);
+                parent = grandparent;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove the given child section or list element section from this section.
+     * The value of this section is set to null if it doesn't hold any sections anymore.
+     *
+     * @param section Child section or list element section to remove.
+     * @return True if the section was removed, false if it isn't part of this section.
+     */
+    boolean removeChild(ConfigurationSection section) {
+        // Make sure the configuration can be modified
+        checkModifiable();
+
+        // Remove list element sections from the list value
+        if (section.parent == this && section.isListElement())
+            return removeElement(section);
+
+        // Remove the section
+        final SectionList sections = getChildren();
+        if (sections == null || !sections.remove(section))
+            return false;
+
+        // Notify the root configuration
+        final Configuration configuration = getConfiguration();
+        if (configuration != null)
+            configuration.onNodeRemoved(section);
+        section.detach();
+
+        // Drop the list if it's empty
+        if (sections.isEmpty())
+            setValue(null);
+        return true;
+    }
+
+    /**
+     * Remove the given list element section from the list value of this section.
+     * The elements following it are moved up, and their sections are re-keyed to their new index.
+     *
+     * @param element List element section to remove.
+     * @return True if the element was removed, false if it isn't part of the list value.
+     */
+    private boolean removeElement(ConfigurationSection element) {
+        // Find the element in the list
+        final List<?> list = (List<?>) this.value;
+        int index = -1;
+        for (int i = 0; i < list.size() && index < 0; i++)
+            if (list.get(i) == element)
+                index = i;
+        if (index < 0)
+            return false;
+
+        // Remove the element and re-key the following ones as a single modification
+        final Configuration configuration = getConfiguration();
+        if (configuration != null)
+            configuration.beginBatch();
+        try {
+            // Notify the root configuration about the removed element, and the elements that move under their old keys
+            final List<Object> elements = new ArrayList<>(list);
+            elements.remove(index);
+            if (configuration != null)
+                for (int i = index; i < list.size(); i++)
+                    if (list.get(i) instanceof ConfigurationSection)
+                        configuration.onNodeRemoved((ConfigurationSection) list.get(i));
+
+            // Re-key the following elements, and replace the list
+            for (int i = index; i < elements.size(); i++)
+                if (elements.get(i) instanceof ConfigurationSection)
+                    ((ConfigurationSection) elements.get(i)).rekey("[" + i + "]");
+            setValue(elements);
+        } finally {
+            if (configuration != null)
+                configuration.endBatch();
+        }
+        return true;
+    }
+
+    /**
+     * Change the key of this section, and drop the cached paths of it and its sub-sections.
+     *
+     * @param key The new key.
+     */
+    private void rekey(String key) {
+        this.key = key;
+        final Deque<ConfigurationSection> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            final ConfigurationSection current = pending.pop();
+            current.path = null;
+
+            // Walk the child sections, or the list element sections
+            final SectionList children = current.getChildren();
+            if (children != null)
+                for (ConfigurationSection child : children)
+                    pending.push(child);
+            else
+                for (ConfigurationSection element : getElements(current.value))
+                    pending.push(element);
+        }
+    }
+
+    /**
+     * Cut this section loose from the tree it was removed from, after the root configuration has been notified.
+     * The section becomes the root of its own tree, so it and its sub-sections no longer resolve paths through, or
+     * report changes to, the configuration they were part of.
+     */
+    private void detach() {
+        this.parent = null;
+        final Deque<ConfigurationSection> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            final ConfigurationSection current = pending.pop();
+            current.root = this;
+            current.depth = current.parent != null ? current.parent.depth + 1 : 0;
+            current.path = null;
+
+            // Walk the child sections, or the list element sections
+            final SectionList children = current.getChildren();
+            if (children != null)
+                for (ConfigurationSection child : children)
+                    pending.push(child);
+            else
+                for (ConfigurationSection element : getElements(current.value))
+                    pending.push(element);
         }
     }
 
@@ -947,7 +1711,7 @@ public class ConfigurationSection {
             return false;
 
         // Get the section the path is leading to
-        final ConfigurationSection section = getConfigurationSection(path);
+        final ConfigurationSection section = findSection(path);
 
         // Make sure the section is not null
         if (section == null)
@@ -963,28 +1727,9 @@ public class ConfigurationSection {
      * @return True if this section contains any sub-sections.
      */
     public boolean isHoldingConfigurationSections() {
-        // Is the current value null
-        if (this.value == null)
-            return false;
-
-        try {
-            @SuppressWarnings("unchecked") final List<ConfigurationSection> sections = (List<ConfigurationSection>) this.value;
-
-            for (ConfigurationSection section : sections) {
-                // Skip null sections
-                if (section == null)
-                    continue;
-
-                // This is a configuration section if any item has a key name
-                String key = section.getName();
-                if (key != null && !key.trim().isEmpty())
-                    return true;
-            }
-
-            return false;
-        } catch (ClassCastException e) {
-            return false;
-        }
+        // The value must be a non-empty list of sections
+        final SectionList sections = getChildren();
+        return sections != null && !sections.isEmpty();
     }
 
     /**
@@ -1023,6 +1768,17 @@ public class ConfigurationSection {
      * @return True if the given path is a configuration section.
      */
     public boolean isConfigurationSection(String path) {
+        return hasSection(path);
+    }
+
+    /**
+     * Check whether the given path is a configuration section of this tree itself.
+     * Unlike {@link #isConfigurationSection(String)}, this is never overridden, see {@link #findSection(String)}.
+     *
+     * @param path Path of the configuration section.
+     * @return True if the given path is a configuration section.
+     */
+    final boolean hasSection(String path) {
         // Make sure the path is not null
         if (path == null)
             return false;
@@ -1034,49 +1790,31 @@ public class ConfigurationSection {
         if (path.equals(""))
             return true;
 
-        // Is the value of this configuration section a list instance, if not it can't hold any sub sections (so return false)
-        if (!(this.value instanceof List))
+        // If this configuration section isn't holding sections, it can't hold the given section
+        final SectionList sections = getChildren();
+        if (sections == null)
             return false;
 
-        // Get the list of configuration sections
-        try {
-            @SuppressWarnings("unchecked") final List<ConfigurationSection> sections = (List<ConfigurationSection>) this.value;
-            for (ConfigurationSection section : sections) {
-                // Make sure the current entry is not null
-                if (section == null)
-                    continue;
-
-                // Get the keys
-                String[] nodes = path.split("\\.", 2);
-                String key = path;
-                String subPath = "";
-                if (nodes.length >= 1)
-                    key = nodes[0];
-                if (nodes.length >= 2)
-                    subPath = nodes[1];
-
-                // Make sure the key of the current entry equals
-                if (!section.getKey().equals(key))
-                    continue;
-
-                // Check whether the path is a configuration section
-                return section.isConfigurationSection(subPath);
-            }
-
-            return false;
+        // Get the keys
+        String[] nodes = path.split("\\.", 2);
+        String key = path;
+        String subPath = "";
+        if (nodes.length >= 1)
+            key = nodes[0].trim();
+        if (nodes.length >= 2)
+            subPath = nodes[1];
 
-        } catch (ClassCastException e) {
-            return false;
-        }
+        // Find the section for the key, and check whether the rest of the path is a configuration section
+        final ConfigurationSection section = sections.find(key);
+        return section != null && section.hasSection(subPath);
     }
 
     /**
      * Get all keys and values in the current configuration section as a map.
-     * This method returns a flat map. All sub-sections have a relative path with a dot as section separator in the key.
+     * Sub-sections are returned as nested maps.
      *
      * @return Map containing all keys and values.
      */
-    // TODO: Parameter to create a flat map of keys and values.
     public Map<String, Object> getValues() {
         // Define a map list to store the values in
         final Map<String, Object> out = new LinkedHashMap<>();
@@ -1085,24 +1823,486 @@ public class ConfigurationSection {
         if (this.key == null)
             return out;
 
-        // Add the values to the
-        if (this.value instanceof List) {
-            try {
-                @SuppressWarnings("unchecked")
-                List<ConfigurationSection> sections = (List<ConfigurationSection>) this.value;
-                for (ConfigurationSection entry : sections)
-                    if (entry.isHoldingConfigurationSections())
-                        out.put(entry.getKey(), entry.getValues());
-                    else
-                        out.put(entry.getKey(), entry.get(""));
-
-            } catch (ClassCastException e) {
-                out.put(getKey(), this.value);
-            }
+        // Add the values of the child sections, or the value of this section if it isn't holding any sections
+        final SectionList sections = getChildren();
+        if (sections != null) {
+            for (ConfigurationSection entry : sections)
+                if (entry.isHoldingConfigurationSections())
+                    out.put(entry.getKey(), entry.getValues());
+                else
+                    out.put(entry.getKey(), exportValue(entry.get("")));
         } else
-            out.put(getKey(), this.value);
+            out.put(getKey(), exportValue(this.value));
+
+        // Return the output
+        return out;
+    }
+
+    /**
+     * Get all keys and values in the current configuration section as a map.
+     * If deep is true, a flat map is returned in which all values of sub-sections have a relative path with a dot as
+     * section separator as key. The tree is walked iteratively, so this doesn't recurse for deep trees.
+     *
+     * @param deep True to return a flat map of all values, false to return nested maps.
+     * @return Map containing all keys and values.
+     */
+    public Map<String, Object> getValues(boolean deep) {
+        // Return nested maps if a flat map isn't requested
+        if (!deep)
+            return getValues();
+
+        // Define a map list to store the values in
+        final Map<String, Object> out = new LinkedHashMap<>();
+
+        // Make sure the key is not null
+        if (this.key == null)
+            return out;
+
+        // Put the value directly if this section isn't holding other sections
+        if (!isHoldingConfigurationSections()) {
+            out.put(getKey(), exportValue(this.value));
+            return out;
+        }
+
+        // Walk the tree depth first, keeping the relative path of each pending section on a second stack
+        final Deque<ConfigurationSection> sections = new ArrayDeque<>();
+        final Deque<String> paths = new ArrayDeque<>();
+        pushChildren(this, "", sections, paths);
+        while (!sections.isEmpty()) {
+            final ConfigurationSection section = sections.pop();
+            final String path = paths.pop();
+
+            // Put leaf values, expand sections holding other sections
+            if (section.isHoldingConfigurationSections())
+                pushChildren(section, path + ".", sections, paths);
+            else
+                out.put(path, exportValue(section.get("")));
+        }
 
         // Return the output
         return out;
     }
+
+    /**
+     * Export the given raw value, converting list element sections back to maps, and lazily loaded strings to strings.
+     *
+     * @param value Raw value to export.
+     * @return Exported value, or the given value if it doesn't hold any list element sections.
+     */
+    static Object exportValue(Object value) {
+        // Lazily loaded strings are exported as strings
+        if (value instanceof SourceSlice)
+            return value.toString();
+
+        // Only lists can hold list element sections
+        if (!(value instanceof List) || value instanceof SectionList)
+            return value;
+
+        // Convert the sections in the list, if there are any
+        final List<?> list = (List<?>) value;
+        List<Object> out = null;
+        for (int i = 0; i < list.size(); i++) {
+            final Object element = list.get(i);
+            if (!(element instanceof ConfigurationSection)) {
+                if (out != null)
+                    out.add(element);
+                continue;
+            }
+            if (out == null)
+                out = new ArrayList<Object>(list.subList(0, i));
+            final ConfigurationSection section = (ConfigurationSection) element;
+            if (section.isHoldingConfigurationSections())
+                out.add(section.getValues());
+            else
+                out.add(section.value != null ? exportValue(section.get("")) : new LinkedHashMap<String, Object>());
+        }
+        return out != null ? out : value;
+    }
+
+    /**
+     * Push the child sections of the given section on the given stacks, in reverse order to pop them in order.
+     *
+     * @param section  Section to push the child sections of.
+     * @param prefix   Relative path prefix for the child sections.
+     * @param sections Stack of sections.
+     * @param paths    Stack of relative section paths.
+     */
+    private static void pushChildren(ConfigurationSection section, String prefix, Deque<ConfigurationSection> sections, Deque<String> paths) {
+        final SectionList children = section.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+            final ConfigurationSection child = children.get(i);
+            sections.push(child);
+            paths.push(prefix + child.getKey());
+        }
+    }
+
+    /**
+     * Merge the given section tree into this section.
+     * Both trees are walked structurally, and sections that exist in both trees are merged in place. Sections that
+     * only exist in the given tree are copied, the given tree itself is never modified. This runs in time linear in
+     * the size of both trees. The root configuration handles the merge as a single modification, like a batch.
+     *
+     * @param other    Section tree to merge into this section.
+     * @param strategy Strategy used for values that exist in both trees.
+     */
+    public void merge(ConfigurationSection other, MergeStrategy strategy) {
+        // Make sure the section and strategy are not null, and the section is not this section
+        if (other == null || strategy == null || other == this)
+            return;
+
+        // Merge the trees as a single batch
+        final Configuration configuration = getConfiguration();
+        if (configuration != null)
+            configuration.beginBatch();
+        try {
+            mergeSection(other, strategy);
+        } finally {
+            if (configuration != null)
+                configuration.endBatch();
+        }
+    }
+
+    /**
+     * Merge the given section tree into this section, see {@link #merge(ConfigurationSection, MergeStrategy)}.
+     *
+     * @param other    Section tree to merge into this section.
+     * @param strategy Strategy used for values that exist in both trees.
+     */
+    private void mergeSection(ConfigurationSection other, MergeStrategy strategy) {
+        // Merge the value if the other section isn't holding any sections
+        final SectionList sources = other.getChildren();
+        if (sources == null) {
+            mergeValue(other.get(""), strategy);
+            return;
+        }
+
+        // Keep the existing value of this section if it isn't holding sections
+        SectionList targets = getChildren();
+        if (targets == null && this.value != null && strategy == MergeStrategy.KEEP_EXISTING)
+            return;
+
+        // Merge each child section into the child section with the same key, or copy it if there is none
+        for (int i = 0; i < sources.size(); i++) {
+            final ConfigurationSection source = sources.get(i);
+            final ConfigurationSection target = targets != null ? targets.find(source.getKey()) : null;
+            if (target != null)
+                target.mergeSection(source, strategy);
+            else {
+                addChild(source.getKey()).copyFrom(source);
+                targets = getChildren();
+            }
+        }
+    }
+
+    /**
+     * Merge the given value into this section.
+     *
+     * @param value    Value to merge.
+     * @param strategy Strategy used if this section already has a value.
+     */
+    private void mergeValue(Object value, MergeStrategy strategy) {
+        // Null values aren't merged
+        if (value == null)
+            return;
+
+        // Keep the existing value
+        if (strategy == MergeStrategy.KEEP_EXISTING && this.value != null)
+            return;
+
+        // Append lists to existing lists
+        if (strategy == MergeStrategy.APPEND && getChildren() == null && this.value instanceof List && value instanceof List) {
+            final List<Object> list = new ArrayList<>((List<?>) this.value);
+            list.addAll(copyList((List<?>) value, list.size()));
+            setValue(list);
+            return;
+        }
+
+        // Replace the value
+        setValue(copyValue(value, this));
+    }
+
+    /**
+     * Create a deep copy of this section and all its sub-sections.
+     * The copy is detached from this tree, and becomes the root of its own tree. Lists and maps are copied as well,
+     * so the copy can be modified without affecting this section.
+     *
+     * @return Copy of this section.
+     */
+    public ConfigurationSection copy() {
+        final ConfigurationSection copy = new ConfigurationSection(getKey(), null);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Copy the value or child sections of the given section into this section.
+     *
+     * @param source Section to copy.
+     */
+    void copyFrom(ConfigurationSection source) {
+        // Copy the value if the section isn't holding any sections
+        final SectionList sources = source.getChildren();
+        if (sources == null) {
+            setValue(copyValue(source.get(""), this));
+            return;
+        }
+
+        // Copy the child sections
+        for (int i = 0; i < sources.size(); i++)
+            addChild(sources.get(i).getKey()).copyFrom(sources.get(i));
+    }
+
+    /**
+     * Copy the given raw value, so it isn't shared between sections.
+     * Lists and maps are copied deeply, other values are immutable and are returned as-is.
+     *
+     * @param value Value to copy.
+     * @param owner Section that will hold the copied value, and the copied list element sections.
+     * @return Copied value.
+     */
+    static Object copyValue(Object value, ConfigurationSection owner) {
+        // Copy lists
+        if (value instanceof List)
+            return owner.copyList((List<?>) value, 0);
+
+        // Copy maps
+        if (value instanceof Map) {
+            final Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                copy.put(entry.getKey(), copyValue(entry.getValue(), owner));
+            return copy;
+        }
+
+        return value;
+    }
+
+    /**
+     * Copy the given list, so it isn't shared between sections.
+     * List element sections are copied as list element sections of this section.
+     *
+     * @param list   List to copy.
+     * @param offset Index of the first list element in the list value of this section.
+     * @return Copied list.
+     */
+    private List<Object> copyList(List<?> list, int offset) {
+        final List<Object> copy = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            final Object element = list.get(i);
+            if (element instanceof ConfigurationSection) {
+                final ConfigurationSection section = new ConfigurationSection(this, "[" + (offset + i) + "]", null);
+                section.copyFrom((ConfigurationSection) element);
+                copy.add(section);
+            } else
+                copy.add(copyValue(element, this));
+        }
+        return copy;
+    }
+
+    /**
+     * Walk this section and all its sub-sections depth first, in order, with the given visitor.
+     * Sections holding other sections are entered and left, and sections holding a value are visited. The list
+     * element sections of a visited value are walked right after it, in order, like {@link #stream()} and
+     * {@link #query(String)} do. The tree is walked with an explicit stack, so this doesn't recurse for deep trees.
+     *
+     * @param visitor Visitor to walk the sections with.
+     */
+    public void accept(ConfigurationVisitor visitor) {
+        // Don't visit anything for an empty root
+        final SectionList rootChildren = getChildren();
+        if ((rootChildren == null || rootChildren.isEmpty()) && isRoot() && get("") == null)
+            return;
+
+        // Stack of pending sections, and whether each of them is pending to be left rather than walked
+        final Deque<ConfigurationSection> sections = new ArrayDeque<>();
+        final Deque<Boolean> leaving = new ArrayDeque<>();
+        sections.push(this);
+        leaving.push(false);
+        while (!sections.isEmpty()) {
+            final ConfigurationSection section = sections.pop();
+            if (leaving.pop()) {
+                visitor.leaveSection(section);
+                continue;
+            }
+
+            // Visit the value if the section isn't holding any sections, and walk its list element sections next
+            final SectionList children = section.getChildren();
+            if (children == null || children.isEmpty()) {
+                visitor.visitValue(section, section.get(""));
+                final List<ConfigurationSection> elements = getElements(section.value);
+                for (int i = elements.size() - 1; i >= 0; i--) {
+                    sections.push(elements.get(i));
+                    leaving.push(false);
+                }
+                continue;
+            }
+
+            // Enter the section, and walk the child sections before leaving it again
+            sections.push(section);
+            leaving.push(true);
+            if (visitor.enterSection(section)) {
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    sections.push(children.get(i));
+                    leaving.push(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a sequential stream of this section and all its sub-sections that hold a value, in depth first order.
+     * The list element sections of a value are streamed right after it, in the same order as
+     * {@link #accept(ConfigurationVisitor)} visits them. Each streamed section provides its path through {@link #getPath()} and its value through {@link #get()}.
+     *
+     * @return Stream of sections holding a value.
+     */
+    public Stream<ConfigurationSection> stream() {
+        return StreamSupport.stream(new SectionSpliterator(this), false);
+    }
+
+    /**
+     * Get a parallel stream of this section and all its sub-sections that hold a value.
+     * The stream splits work at child section boundaries, so wide sections are divided evenly across threads.
+     * The configuration must not be modified while the stream is used.
+     *
+     * @return Parallel stream of sections holding a value.
+     */
+    public Stream<ConfigurationSection> parallelStream() {
+        return StreamSupport.stream(new SectionSpliterator(this), true);
+    }
+
+    /**
+     * Get a lazy stream of the sections matching the given path pattern, in depth first order.
+     * See {@link PathQuery} for the pattern syntax, for example {@code tenants.*.limits.**}.
+     *
+     * @param pattern Path pattern, relative to this section.
+     * @return Stream of matching sections.
+     */
+    public Stream<ConfigurationSection> query(String pattern) {
+        return query(PathQuery.compile(pattern));
+    }
+
+    /**
+     * Get a lazy stream of the sections matching the given compiled query, in depth first order.
+     *
+     * @param query Compiled query, relative to this section.
+     * @return Stream of matching sections.
+     */
+    public Stream<ConfigurationSection> query(PathQuery query) {
+        return query.stream(this);
+    }
+
+    /**
+     * Add a listener that is notified when sections matching the given path pattern change.
+     * Changes made by setting values, creating or removing sections and loading the configuration are all reported.
+     * The changes of a batch or load are coalesced, so the listener is notified once with all matching paths when it's
+     * complete. Listeners are notified on the executor of the root configuration, see
+     * {@link Configuration#setListenerExecutor(java.util.concurrent.Executor)}. A listener that throws doesn't prevent
+     * other listeners from being notified, and when they run on the modifying thread, its exception is thrown from the
+     * modification once all listeners are notified.
+     * <p>
+     * The pattern is relative to this section, see {@link PathQuery}. For example, {@code database.**} notifies about
+     * any change in the database section. Only the listeners whose pattern can match a changed path are checked, so
+     * patterns starting with literal keys are cheaper than patterns starting with wildcards.
+     *
+     * @param pattern  Path pattern of the sections to listen to.
+     * @param listener The listener.
+     * @throws IllegalStateException Throws if this section isn't part of a configuration.
+     */
+    public void addListener(String pattern, ConfigurationListener listener) {
+        // Make sure this section is part of a configuration
+        final Configuration configuration = getConfiguration();
+        if (configuration == null)
+            throw new IllegalStateException("Section is not part of a configuration");
+
+        // Register the listener with the full path pattern
+        final String path = getPath();
+        configuration.registerListener(PathQuery.compile(path.isEmpty() ? pattern : path + "." + pattern), listener);
+    }
+
+    /**
+     * Remove a listener that was added to the configuration this section is part of.
+     * All patterns the listener was added for are removed.
+     *
+     * @param listener The listener.
+     * @return True if the listener was removed, false if it wasn't added.
+     */
+    public boolean removeListener(ConfigurationListener listener) {
+        final Configuration configuration = getConfiguration();
+        return configuration != null && configuration.unregisterListener(listener);
+    }
+
+    /**
+     * Compact the storage of this section and all its sub-sections, to reduce their memory footprint.
+     * Child section lists and list values are trimmed to their size, and equal keys, strings and boxed primitive
+     * values are deduplicated to share a single instance.
+     * Keys are interned with the key interner of the root configuration if it has one, and cached paths and cached
+     * conversions of values are dropped.
+     */
+    public void compact() {
+        // Make sure the configuration can be modified
+        checkModifiable();
+
+        // Table of canonical instances for keys and values
+        final Map<Object, Object> table = new HashMap<>();
+        final Configuration configuration = getConfiguration();
+        final KeyInterner interner = configuration != null ? configuration.getKeyInterner() : null;
+
+        // Walk the tree, and compact each section
+        final Deque<ConfigurationSection> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            final ConfigurationSection section = pending.pop();
+
+            // Drop the cached path and conversions, and deduplicate the key
+            section.path = null;
+            if (configuration != null)
+                configuration.dropConversions(section);
+            if (section.key != null)
+                section.key = interner != null ? interner.intern(section.key) : (String) canonicalize(section.key, table);
+
+            // Trim and walk the child sections
+            final SectionList children = section.getChildren();
+            if (children != null) {
+                children.trimToSize();
+                for (ConfigurationSection child : children)
+                    pending.push(child);
+                continue;
+            }
+
+            // Trim and deduplicate the list value
+            if (section.value instanceof ArrayList) {
+                @SuppressWarnings("unchecked") final ArrayList<Object> list = (ArrayList<Object>) section.value;
+                list.trimToSize();
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i) instanceof ConfigurationSection)
+                        pending.push((ConfigurationSection) list.get(i));
+                    else
+                        list.set(i, canonicalize(list.get(i), table));
+                }
+                continue;
+            }
+
+            // Deduplicate the value
+            section.value = canonicalize(section.value, table);
+        }
+    }
+
+    /**
+     * Get the canonical instance of the given value from the given table.
+     * Only strings and boxed primitives are deduplicated, other values are returned as-is.
+     *
+     * @param value Value to get the canonical instance for.
+     * @param table Table of canonical instances.
+     * @return Canonical instance of the value.
+     */
+    private static Object canonicalize(Object value, Map<Object, Object> table) {
+        // Only deduplicate immutable values
+        if (!(value instanceof String || value instanceof Integer || value instanceof Long
+            || value instanceof Double || value instanceof Float || value instanceof Boolean))
+            return value;
+
+        // Get or put the canonical instance
+        final Object canonical = table.putIfAbsent(value, value);
+        return canonical != null ? canonical : value;
+    }
 }
@@ -0,0 +1,38 @@
+package com.timvisee.yamlwrapper;
+
+/**
+ * Visitor that walks a configuration section tree depth first, in order.
+ * See {@link ConfigurationSection#accept(ConfigurationVisitor)}.
+ * The visited sections are passed directly, so the key, depth and typed values of each section can be read without
+ * building any intermediate collections.
+ */
+public interface ConfigurationVisitor {
+
+    /**
+     * Called when a section holding other sections is entered, before its child sections are visited.
+     *
+     * @param section The entered section.
+     * @return True to visit the child sections, false to skip them.
+     */
+    default boolean enterSection(ConfigurationSection section) {
+        return true;
+    }
+
+    /**
+     * Called for each section that holds a value instead of other sections.
+     * If the value is a list holding list element sections, those are walked right after this call, in order.
+     *
+     * @param section The visited section.
+     * @param value   Raw value of the section, may be null.
+     */
+    void visitValue(ConfigurationSection section, Object value);
+
+    /**
+     * Called when a section holding other sections is left, after its child sections are visited.
+     * This is also called if the child sections were skipped.
+     *
+     * @param section The left section.
+     */
+    default void leaveSection(ConfigurationSection section) {
+    }
+}
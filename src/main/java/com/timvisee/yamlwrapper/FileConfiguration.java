@@ -1,9 +1,25 @@
 package com.timvisee.yamlwrapper;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public abstract class FileConfiguration extends Configuration {
 
+    /**
+     * Size of the buffers used for compressing and decompressing files.
+     */
+    private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Whether files are compressed with gzip when they're saved.
+     */
+    private boolean compressOutput = false;
+
     /**
      * Constructor.
      */
@@ -11,6 +27,34 @@ public abstract class FileConfiguration extends Configuration {
         super();
     }
 
+    /**
+     * Check whether files are compressed with gzip when they're saved.
+     *
+     * @return True if saved files are compressed, false if not.
+     */
+    public boolean isCompressOutput() {
+        return this.compressOutput;
+    }
+
+    /**
+     * Set whether files are compressed with gzip when they're saved to a file.
+     * Compressed files are detected and decompressed automatically when they're loaded from a file, whether this is
+     * enabled or not. Configurations saved to a stream, writer or string are never compressed.
+     *
+     * @param compressOutput True to compress saved files, false to save them as is.
+     */
+    public void setCompressOutput(boolean compressOutput) {
+        this.compressOutput = compressOutput;
+    }
+
+    @Override
+    <T extends Configuration> T copySettingsInto(T target) {
+        super.copySettingsInto(target);
+        if (target instanceof FileConfiguration)
+            ((FileConfiguration) target).setCompressOutput(this.compressOutput);
+        return target;
+    }
+
     /**
      * Save the configuration to the given file.
      *
@@ -25,17 +69,71 @@ public abstract class FileConfiguration extends Configuration {
         // Create the parent directories if they don't exist
         file.getParentFile().mkdirs();
 
-        // Get the configuration string
-        String data = saveToString();
+        // Save the data
+        try (OutputStream stream = compress(new FileOutputStream(file))) {
+            save(stream);
+        }
+    }
+
+    /**
+     * Save the configuration to the given file.
+     * The file is compressed with gzip if {@link #isCompressOutput()} is enabled.
+     *
+     * @param path Path of the file to save the configuration in.
+     * @throws IOException Throws if failed to save the configuration to the given file.
+     */
+    public void save(Path path) throws IOException {
+        // The path may not be null
+        if (path == null)
+            return;
 
-        // Construct the file writer
+        // Create the parent directories if they don't exist
+        final Path parent = path.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
 
         // Save the data
-        try (FileWriter writer = new FileWriter(file)) {
-            writer.write(data);
+        try (OutputStream stream = compress(Files.newOutputStream(path))) {
+            save(stream);
         }
     }
 
+    /**
+     * Wrap the given output stream of a file to compress the data written to it, if compression is enabled.
+     *
+     * @param stream Output stream of the file.
+     * @return Output stream to save the configuration to.
+     * @throws IOException Throws if failed to write the compression header.
+     */
+    private OutputStream compress(OutputStream stream) throws IOException {
+        return this.compressOutput ? new GZIPOutputStream(stream, COMPRESSION_BUFFER_SIZE) : stream;
+    }
+
+    /**
+     * Save the configuration to the given output stream, encoded as UTF-8.
+     * The stream is flushed, but not closed.
+     *
+     * @param stream Output stream to save the configuration to.
+     * @throws IOException Throws if failed to save the configuration to the given output stream.
+     */
+    public void save(OutputStream stream) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        save(writer);
+        writer.flush();
+    }
+
+    /**
+     * Save the configuration to the given writer.
+     * Formats that can be written in a streaming fashion override this, by default the configuration string is written.
+     * The writer is not closed.
+     *
+     * @param writer Writer to save the configuration to.
+     * @throws IOException Throws if failed to save the configuration to the given writer.
+     */
+    public void save(Writer writer) throws IOException {
+        writer.write(saveToString());
+    }
+
     /**
      * Save the configuration to the given file.
      *
@@ -60,17 +158,62 @@ public abstract class FileConfiguration extends Configuration {
 
     /**
      * Load a configuration file from the given file.
+     * Files compressed with gzip are detected by their magic bytes, and decompressed while they're loaded.
      *
      * @param file File to load the configuration from.
      * @throws FileNotFoundException Throws if the file that was given, doesn't exist.
      * @throws IOException           Throws if failed to load the configuration file.
      */
     public void load(File file) throws FileNotFoundException, IOException {
-        load(new FileInputStream(file));
+        load(decompress(new FileInputStream(file)));
+    }
+
+    /**
+     * Load a configuration file from the given file.
+     * Files compressed with gzip are detected by their magic bytes, and decompressed while they're loaded.
+     *
+     * @param path Path of the file to load the configuration from.
+     * @throws IOException Throws if failed to load the configuration file.
+     */
+    public void load(Path path) throws IOException {
+        load(decompress(Files.newInputStream(path)));
     }
 
     /**
-     * Load the configuration from an input stream.
+     * Wrap the given input stream of a file to decompress it while it's read, if it's compressed.
+     * The compression is detected by the magic bytes at the start of the stream. Only gzip is supported, Zstandard
+     * compressed files are detected but rejected. The given stream is closed if it's rejected.
+     *
+     * @param stream Input stream of the file.
+     * @return Input stream of the decompressed data.
+     * @throws IOException Throws if failed to read the stream, or if it's compressed in an unsupported format.
+     */
+    static InputStream decompress(InputStream stream) throws IOException {
+        try {
+            // Peek at the magic bytes
+            final InputStream input = new BufferedInputStream(stream, COMPRESSION_BUFFER_SIZE);
+            input.mark(4);
+            final int first = input.read();
+            final int second = input.read();
+            final int third = input.read();
+            final int fourth = input.read();
+            input.reset();
+
+            // Decompress gzip, and reject Zstandard
+            if (first == 0x1F && second == 0x8B)
+                return new GZIPInputStream(input, COMPRESSION_BUFFER_SIZE);
+            if (first == 0x28 && second == 0xB5 && third == 0x2F && fourth == 0xFD)
+                throw new IOException("Zstandard compressed configurations are not supported");
+            return input;
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Load the configuration from an input stream, decoded as UTF-8.
+     * Files are always loaded through this, so their encoding doesn't depend on the platform.
      *
      * @param stream Input stream to load the configuration from.
      * @throws IOException Throws if failed to load the configuration from the given input stream.
@@ -80,21 +223,32 @@ public abstract class FileConfiguration extends Configuration {
         if (stream == null)
             return;
 
-        // Create the proper readers to read the file
-        InputStreamReader reader = new InputStreamReader(stream);
-        StringBuilder builder = new StringBuilder();
-
-        // Safely read the file from the input reader
-        try (BufferedReader input = new BufferedReader(reader)) {
-            // Variable to hold the current line
-            String line;
+        // Load the configuration through a reader, and close the stream
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            load(reader);
+        }
+    }
 
-            // Read the file line by line
-            while ((line = input.readLine()) != null) {
-                builder.append(line);
-                builder.append('\n');
-            }
+    /**
+     * Load the configuration from the given reader.
+     * Formats that can be read in a streaming fashion override this, by default the contents are read into a string
+     * that is loaded with {@link #loadFromString(String)}. The reader is not closed.
+     *
+     * @param reader Reader to load the configuration from.
+     * @throws IOException Throws if failed to load the configuration from the given reader.
+     */
+    public void load(Reader reader) throws IOException {
+        // Make sure the reader is not null
+        if (reader == null)
+            return;
 
+        // Read the contents line by line
+        final StringBuilder builder = new StringBuilder();
+        final BufferedReader input = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        while ((line = input.readLine()) != null) {
+            builder.append(line);
+            builder.append('\n');
         }
 
         // Load the file from the given string
@@ -123,4 +277,25 @@ public abstract class FileConfiguration extends Configuration {
      * @param contents Configuration string.
      */
     public abstract void loadFromString(String contents);
+
+    /**
+     * Load the values of a parsed document into this configuration.
+     * Maps are converted to sections as a single batch, and the configuration is compacted afterwards if compact
+     * storage is enabled.
+     *
+     * @param input Parsed document.
+     */
+    void loadDocument(Map<?, ?> input) {
+        // Convert sub-maps to sub-sections, as a single batch
+        beginBatch();
+        try {
+            loadValues(input);
+        } finally {
+            endBatch();
+        }
+
+        // Compact the loaded configuration
+        if (isCompactStorage())
+            compact();
+    }
 }
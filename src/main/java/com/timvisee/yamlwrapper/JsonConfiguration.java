@@ -0,0 +1,272 @@
+package com.timvisee.yamlwrapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Configuration stored as JSON.
+ * JSON is read and written in a streaming fashion with a minimal parser, which is much faster than parsing it as YAML.
+ * Objects are loaded as sections, arrays as lists, and numbers as integers, longs, big integers or doubles, just like
+ * the same document would be loaded as YAML.
+ * <p>
+ * Values that JSON has no type for are saved in their common JSON form: sets and arrays as arrays, byte arrays as
+ * Base64 strings and dates as ISO-8601 strings. These are loaded back as lists and strings. Other values, and numbers
+ * that aren't finite, can't be stored and fail to save rather than being written as something that can't be read back.
+ */
+public class JsonConfiguration extends FileConfiguration {
+
+    /**
+     * Constructor.
+     */
+    public JsonConfiguration() {
+        super();
+    }
+
+    /**
+     * Create a deep copy of this JSON configuration, without parsing it again.
+     *
+     * @return Copy of this configuration.
+     */
+    @Override
+    public JsonConfiguration copy() {
+        return copyInto(new JsonConfiguration());
+    }
+
+    /**
+     * Load the configuration from the given input stream, which is decoded as UTF-8.
+     *
+     * @param stream Input stream to load the configuration from.
+     * @throws IOException Throws if failed to load the configuration from the given input stream.
+     */
+    @Override
+    public void load(InputStream stream) throws IOException {
+        // Make sure the input stream is not null
+        if (stream == null)
+            return;
+
+        // Load the configuration through a reader, and close the stream
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            load(reader);
+        }
+    }
+
+    @Override
+    public void load(Reader reader) throws IOException {
+        // Make sure the reader is not null
+        if (reader == null)
+            return;
+
+        // Parse the document, and load it if it's an object
+        final Object input = new JsonParser(reader).parseDocument();
+        if (input instanceof Map)
+            loadDocument((Map<?, ?>) input);
+    }
+
+    /**
+     * Load a JSON configuration from the given string.
+     * The configuration is left unchanged if the JSON in the string is invalid.
+     *
+     * @param contents String holding the JSON configuration.
+     */
+    @Override
+    public void loadFromString(String contents) {
+        // Make sure the contents are not null
+        if (contents == null)
+            return;
+
+        // Load the configuration
+        try {
+            load(new StringReader(contents));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Save the configuration to the given output stream, encoded as UTF-8.
+     * The stream is flushed, but not closed.
+     *
+     * @param stream Output stream to save the configuration to.
+     * @throws IOException Throws if failed to save the configuration to the given output stream.
+     */
+    @Override
+    public void save(OutputStream stream) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        save(writer);
+        writer.flush();
+    }
+
+    @Override
+    public void save(Writer writer) throws IOException {
+        writeSection(this, writer);
+    }
+
+    /**
+     * Save the JSON configuration to a string.
+     *
+     * @return String holding the JSON configuration.
+     */
+    @Override
+    public String saveToString() {
+        final StringWriter writer = new StringWriter();
+        try {
+            save(writer);
+        } catch (IOException e) {
+            // Writing to a string only fails for values that can't be stored
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Write the given section as a JSON object.
+     *
+     * @param section Section to write.
+     * @param writer  Writer to write to.
+     * @throws IOException Throws if failed to write, or if a value can't be stored.
+     */
+    private static void writeSection(ConfigurationSection section, Writer writer) throws IOException {
+        writer.write('{');
+        final SectionList children = section.getChildren();
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                final ConfigurationSection child = children.get(i);
+                if (i > 0)
+                    writer.write(',');
+                writeString(child.getKey(), writer);
+                writer.write(':');
+                if (child.getChildren() != null)
+                    writeSection(child, writer);
+                else
+                    writeValue(child.getRawValue(), writer);
+            }
+        }
+        writer.write('}');
+    }
+
+    /**
+     * Write the given value as JSON.
+     * Sets and arrays are written as arrays, byte arrays as Base64 strings and dates as ISO-8601 strings.
+     *
+     * @param value  Value to write.
+     * @param writer Writer to write to.
+     * @throws IOException Throws if failed to write, or if the value can't be stored.
+     */
+    private static void writeValue(Object value, Writer writer) throws IOException {
+        if (value == null)
+            writer.write("null");
+        else if (value instanceof ConfigurationSection) {
+            // List element sections, which hold an empty map if they don't hold anything else
+            final ConfigurationSection section = (ConfigurationSection) value;
+            if (section.getChildren() != null || section.getRawValue() == null)
+                writeSection(section, writer);
+            else
+                writeValue(section.getRawValue(), writer);
+        } else if (value instanceof Boolean)
+            writer.write(value.toString());
+        else if (value instanceof Number) {
+            // Non-finite floating point numbers can't be represented in JSON
+            final double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number))
+                throw new IOException("Can't store non-finite number " + value);
+            writer.write(value.toString());
+        } else if (value instanceof Collection)
+            writeArray(((Collection<?>) value).toArray(), writer);
+        else if (value instanceof Object[])
+            writeArray((Object[]) value, writer);
+        else if (value instanceof byte[])
+            writeString(Base64.getEncoder().encodeToString((byte[]) value), writer);
+        else if (value instanceof Date)
+            writeString(Instant.ofEpochMilli(((Date) value).getTime()).toString(), writer);
+        else if (value instanceof Map) {
+            writer.write('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first)
+                    writer.write(',');
+                first = false;
+                writeString(String.valueOf(entry.getKey()), writer);
+                writer.write(':');
+                writeValue(entry.getValue(), writer);
+            }
+            writer.write('}');
+        } else if (value instanceof CharSequence || value instanceof Character)
+            writeString(value.toString(), writer);
+        else
+            throw new IOException("Can't store value of type " + value.getClass().getName());
+    }
+
+    /**
+     * Write the given elements as a JSON array.
+     *
+     * @param elements Elements to write.
+     * @param writer   Writer to write to.
+     * @throws IOException Throws if failed to write, or if an element can't be stored.
+     */
+    private static void writeArray(Object[] elements, Writer writer) throws IOException {
+        writer.write('[');
+        for (int i = 0; i < elements.length; i++) {
+            if (i > 0)
+                writer.write(',');
+            writeValue(elements[i], writer);
+        }
+        writer.write(']');
+    }
+
+    /**
+     * Write the given string as a quoted and escaped JSON string.
+     *
+     * @param string String to write.
+     * @param writer Writer to write to.
+     * @throws IOException Throws if failed to write.
+     */
+    private static void writeString(String string, Writer writer) throws IOException {
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < string.length(); i++) {
+            // Write unescaped runs at once
+            final char c = string.charAt(i);
+            if (c >= ' ' && c != '"' && c != '\\')
+                continue;
+            writer.write(string, start, i - start);
+            start = i + 1;
+
+            // Escape the character
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    writer.write(String.format("\\u%04x", (int) c));
+            }
+        }
+        writer.write(string, start, string.length() - start);
+        writer.write('"');
+    }
+}
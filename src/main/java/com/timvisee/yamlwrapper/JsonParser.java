@@ -0,0 +1,390 @@
+package com.timvisee.yamlwrapper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON parser, reading a single JSON document from a reader into maps, lists and scalars.
+ * See {@link JsonConfiguration}.
+ */
+final class JsonParser {
+
+    /**
+     * Size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Reader to parse from.
+     */
+    private final Reader reader;
+
+    /**
+     * Read buffer.
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Position of the next character in the buffer.
+     */
+    private int position;
+
+    /**
+     * Number of characters in the buffer.
+     */
+    private int limit;
+
+    /**
+     * Number of characters read before the buffer, for error messages.
+     */
+    private long offset;
+
+    /**
+     * Builder reused for strings and numbers.
+     */
+    private final StringBuilder builder = new StringBuilder();
+
+    /**
+     * Constructor.
+     *
+     * @param reader Reader to parse from.
+     */
+    JsonParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Parse a complete JSON document.
+     *
+     * @return The parsed value.
+     * @throws IOException Throws if failed to read, or if the JSON is invalid.
+     */
+    Object parseDocument() throws IOException {
+        final Object value = parseValue(skipWhitespace());
+        if (skipWhitespace() != -1)
+            throw error("Unexpected content after the document");
+        return value;
+    }
+
+    /**
+     * Parse a value starting with the given character.
+     *
+     * @param c First character of the value.
+     * @return The parsed value.
+     * @throws IOException Throws if failed to read, or if the JSON is invalid.
+     */
+    private Object parseValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return parseObject();
+            case '[':
+                return parseArray();
+            case '"':
+                return parseString();
+            case 't':
+                expect("rue");
+                return Boolean.TRUE;
+            case 'f':
+                expect("alse");
+                return Boolean.FALSE;
+            case 'n':
+                expect("ull");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    return parseNumber(c);
+                throw error(c == -1 ? "Unexpected end of the document" : "Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Parse an object, after its opening brace.
+     *
+     * @return The parsed object.
+     * @throws IOException Throws if failed to read, or if the JSON is invalid.
+     */
+    private Map<String, Object> parseObject() throws IOException {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        int c = skipWhitespace();
+        if (c == '}')
+            return map;
+        while (true) {
+            // Parse the key and value
+            if (c != '"')
+                throw error("Expected a key");
+            final String key = parseString();
+            if (skipWhitespace() != ':')
+                throw error("Expected ':'");
+            map.put(key, parseValue(skipWhitespace()));
+
+            // Continue with the next entry, or end the object
+            c = skipWhitespace();
+            if (c == '}')
+                return map;
+            if (c != ',')
+                throw error("Expected ',' or '}'");
+            c = skipWhitespace();
+        }
+    }
+
+    /**
+     * Parse an array, after its opening bracket.
+     *
+     * @return The parsed array.
+     * @throws IOException Throws if failed to read, or if the JSON is invalid.
+     */
+    private List<Object> parseArray() throws IOException {
+        final List<Object> list = new ArrayList<>();
+        int c = skipWhitespace();
+        if (c == ']')
+            return list;
+        while (true) {
+            list.add(parseValue(c));
+
+            // Continue with the next element, or end the array
+            c = skipWhitespace();
+            if (c == ']')
+                return list;
+            if (c != ',')
+                throw error("Expected ',' or ']'");
+            c = skipWhitespace();
+        }
+    }
+
+    /**
+     * Parse a string, after its opening quote.
+     *
+     * @return The parsed string.
+     * @throws IOException Throws if failed to read, or if the JSON is invalid.
+     */
+    private String parseString() throws IOException {
+        this.builder.setLength(0);
+        while (true) {
+            // Append unescaped runs from the buffer at once
+            if (this.position == this.limit && !fill())
+                throw error("Unterminated string");
+            final int start = this.position;
+            while (this.position < this.limit) {
+                final char c = this.buffer[this.position];
+                if (c == '"' || c == '\\' || c < ' ')
+                    break;
+                this.position++;
+            }
+            this.builder.append(this.buffer, start, this.position - start);
+            if (this.position == this.limit)
+                continue;
+
+            // Control characters must be escaped
+            if (this.buffer[this.position] < ' ')
+                throw error("Unescaped control character in string");
+
+            // End the string, or unescape a character
+            if (this.buffer[this.position++] == '"')
+                return this.builder.toString();
+            final int c = read();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    this.builder.append((char) c);
+                    break;
+                case 'b':
+                    this.builder.append('\b');
+                    break;
+                case 'f':
+                    this.builder.append('\f');
+                    break;
+                case 'n':
+                    this.builder.append('\n');
+                    break;
+                case 'r':
+                    this.builder.append('\r');
+                    break;
+                case 't':
+                    this.builder.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        final int digit = Character.digit(read(), 16);
+                        if (digit < 0)
+                            throw error("Invalid unicode escape");
+                        code = (code << 4) | digit;
+                    }
+                    this.builder.append((char) code);
+                    break;
+                default:
+                    throw error("Invalid escape");
+            }
+        }
+    }
+
+    /**
+     * Parse a number starting with the given character.
+     * Integers are parsed as the smallest of integer, long and big integer that fits, other numbers as doubles.
+     *
+     * @param first First character of the number.
+     * @return The parsed number.
+     * @throws IOException Throws if failed to read, or if the JSON is invalid.
+     */
+    private Number parseNumber(int first) throws IOException {
+        // Collect the characters of the number
+        this.builder.setLength(0);
+        this.builder.append((char) first);
+        boolean decimal = false;
+        while (true) {
+            final int c = peek();
+            if (c >= '0' && c <= '9' || c == '-' || c == '+')
+                this.builder.append((char) c);
+            else if (c == '.' || c == 'e' || c == 'E') {
+                this.builder.append((char) c);
+                decimal = true;
+            } else
+                break;
+            this.position++;
+        }
+
+        // Parse the number, which must follow the JSON grammar as the parsers below also accept other forms
+        final String number = this.builder.toString();
+        if (!isNumber(number))
+            throw error("Invalid number " + number);
+        try {
+            if (decimal)
+                return Double.parseDouble(number);
+            if (number.length() <= 18) {
+                final long value = Long.parseLong(number);
+                return value == (int) value ? (Number) (int) value : (Number) value;
+            }
+            final BigInteger value = new BigInteger(number);
+            return value.bitLength() < 64 ? (Number) value.longValue() : (Number) value;
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + number);
+        }
+    }
+
+    /**
+     * Check whether the given characters form a number as defined by JSON.
+     * The integer part has no leading zeros, and the fraction and exponent have at least one digit.
+     *
+     * @param number Characters of the number.
+     * @return True if the number is valid.
+     */
+    private static boolean isNumber(String number) {
+        final int length = number.length();
+        int i = 0;
+        if (i < length && number.charAt(i) == '-')
+            i++;
+
+        // Integer part
+        if (i < length && number.charAt(i) == '0')
+            i++;
+        else if ((i = skipDigits(number, i)) < 0)
+            return false;
+
+        // Fraction
+        if (i < length && number.charAt(i) == '.' && (i = skipDigits(number, i + 1)) < 0)
+            return false;
+
+        // Exponent
+        if (i < length && (number.charAt(i) == 'e' || number.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (number.charAt(i) == '+' || number.charAt(i) == '-'))
+                i++;
+            if ((i = skipDigits(number, i)) < 0)
+                return false;
+        }
+        return i == length;
+    }
+
+    /**
+     * Skip the digits at the given index.
+     *
+     * @param number Characters of a number.
+     * @param index  Index of the first digit.
+     * @return Index after the digits, or -1 if there are no digits at the given index.
+     */
+    private static int skipDigits(String number, int index) {
+        int i = index;
+        while (i < number.length() && number.charAt(i) >= '0' && number.charAt(i) <= '9')
+            i++;
+        return i > index ? i : -1;
+    }
+
+    /**
+     * Expect the given characters.
+     *
+     * @param expected Expected characters.
+     * @throws IOException Throws if failed to read, or if other characters were read.
+     */
+    private void expect(String expected) throws IOException {
+        for (int i = 0; i < expected.length(); i++)
+            if (read() != expected.charAt(i))
+                throw error("Invalid literal");
+    }
+
+    /**
+     * Skip whitespace, and read the next character.
+     *
+     * @return The next character that isn't whitespace, or -1 at the end.
+     * @throws IOException Throws if failed to read.
+     */
+    private int skipWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    /**
+     * Read the next character.
+     *
+     * @return The next character, or -1 at the end.
+     * @throws IOException Throws if failed to read.
+     */
+    private int read() throws IOException {
+        if (this.position == this.limit && !fill())
+            return -1;
+        return this.buffer[this.position++];
+    }
+
+    /**
+     * Get the next character without reading it.
+     *
+     * @return The next character, or -1 at the end.
+     * @throws IOException Throws if failed to read.
+     */
+    private int peek() throws IOException {
+        if (this.position == this.limit && !fill())
+            return -1;
+        return this.buffer[this.position];
+    }
+
+    /**
+     * Fill the buffer with the next characters.
+     *
+     * @return True if characters were read, false at the end.
+     * @throws IOException Throws if failed to read.
+     */
+    private boolean fill() throws IOException {
+        this.offset += this.limit;
+        this.position = 0;
+        this.limit = Math.max(this.reader.read(this.buffer), 0);
+        return this.limit > 0;
+    }
+
+    /**
+     * Create an exception for invalid JSON at the current position.
+     *
+     * @param message Error message.
+     * @return The exception.
+     */
+    private IOException error(String message) {
+        return new IOException(message + " at character " + (this.offset + this.position));
+    }
+}
@@ -0,0 +1,66 @@
+package com.timvisee.yamlwrapper;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Weak string table used to deduplicate section keys.
+ * Keys that are interned through the same interner share a single string instance, which saves memory when many
+ * sections or configurations use the same key names, and allows keys to be compared by identity.
+ * Keys are held weakly, so keys that aren't used anymore can be garbage collected.
+ */
+public class KeyInterner {
+
+    /**
+     * Global key interner instance.
+     */
+    private static final KeyInterner GLOBAL = new KeyInterner();
+
+    /**
+     * Table of interned keys.
+     */
+    private final Map<String, WeakReference<String>> table = new WeakHashMap<>();
+
+    /**
+     * Get the global key interner, shared by all configurations that use it.
+     *
+     * @return Global key interner.
+     */
+    public static KeyInterner global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Intern the given key.
+     *
+     * @param key Key to intern.
+     * @return The canonical instance of the key.
+     */
+    public synchronized String intern(String key) {
+        // Make sure the key is not null
+        if (key == null)
+            return null;
+
+        // Return the canonical instance if the key is known
+        final WeakReference<String> reference = this.table.get(key);
+        if (reference != null) {
+            final String canonical = reference.get();
+            if (canonical != null)
+                return canonical;
+        }
+
+        // Store the key as canonical instance
+        this.table.put(key, new WeakReference<>(key));
+        return key;
+    }
+
+    /**
+     * Get the number of keys in this interner.
+     *
+     * @return Number of keys.
+     */
+    public synchronized int size() {
+        return this.table.size();
+    }
+}
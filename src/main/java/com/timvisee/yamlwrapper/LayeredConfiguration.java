@@ -0,0 +1,734 @@
+package com.timvisee.yamlwrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Configuration that resolves its values through a stack of layers, without copying them.
+ * Values set in this configuration itself take precedence over the layers, and layers that are added first take
+ * precedence over layers that are added later. A typical stack would be host overrides, environment overrides and
+ * base defaults, in that order. Values are always set in this configuration itself, the layers are never modified.
+ * <p>
+ * Removing a path that has a value in any layer hides it, and everything below it, until a value is set at that path
+ * again in this configuration itself.
+ * <p>
+ * Sections returned by {@link #getConfigurationSection(String)} and {@link #createConfigurationSection(String)} are
+ * views that resolve everything through this configuration by their full path, so they see the layers as well.
+ * Keys, values and list element lookups are layered too. The layered tree doesn't exist as sections, so walking it
+ * through {@link #stream()}, {@link #parallelStream()}, {@link #query(PathQuery)} or {@link #accept(ConfigurationVisitor)}
+ * isn't supported, use {@link #getValues(boolean)} instead.
+ * <p>
+ * Resolved values are cached per path. The cache is invalidated when this configuration or any of its layers is
+ * modified, for layers that are part of a {@link Configuration}. The cache is concurrent, so this configuration may be
+ * read by multiple threads, as long as neither it nor any of its layers is modified at the same time.
+ */
+public class LayeredConfiguration extends Configuration {
+
+    /**
+     * Sentinel for cached values that resolved to null.
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     * Layers to resolve values through, in order of precedence.
+     */
+    private final List<ConfigurationSection> layers = new ArrayList<>();
+
+    /**
+     * Cache of resolved values by path.
+     */
+    private final Map<String, Object> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Canonical paths that are removed, hiding the values of the layers at and below them.
+     */
+    private final Set<String> tombstones = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Number of times the removed paths have changed, as part of the modification stamp.
+     */
+    private long tombstoneCount;
+
+    /**
+     * Modification stamp of this configuration and its layers when the cache was last validated.
+     */
+    private volatile long cacheStamp = -1;
+
+    /**
+     * Whether resolved values are cached.
+     */
+    private boolean cacheEnabled = true;
+
+    /**
+     * Constructor.
+     *
+     * @param layers Layers to resolve values through, in order of precedence.
+     */
+    public LayeredConfiguration(ConfigurationSection... layers) {
+        super();
+        for (ConfigurationSection layer : layers)
+            addLayer(layer);
+    }
+
+    /**
+     * Add a layer with the lowest precedence.
+     *
+     * @param layer Layer to add.
+     */
+    public void addLayer(ConfigurationSection layer) {
+        // Make sure the layer is not null
+        if (layer == null)
+            return;
+
+        this.layers.add(layer);
+        this.cache.clear();
+    }
+
+    /**
+     * Remove a layer.
+     *
+     * @param layer Layer to remove.
+     * @return True if the layer was removed, false if it wasn't a layer of this configuration.
+     */
+    public boolean removeLayer(ConfigurationSection layer) {
+        this.cache.clear();
+        return this.layers.remove(layer);
+    }
+
+    /**
+     * Get the layers of this configuration, in order of precedence.
+     *
+     * @return Unmodifiable list of layers.
+     */
+    public List<ConfigurationSection> getLayers() {
+        return Collections.unmodifiableList(this.layers);
+    }
+
+    /**
+     * Check whether resolved values are cached.
+     *
+     * @return True if resolved values are cached, false if not.
+     */
+    public boolean isCacheEnabled() {
+        return this.cacheEnabled;
+    }
+
+    /**
+     * Enable or disable caching of resolved values.
+     * Caching speeds up repeated reads, at the cost of memory for each resolved path.
+     *
+     * @param cacheEnabled True to cache resolved values, false to not cache them.
+     */
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+        this.cache.clear();
+    }
+
+    /**
+     * Create a copy of this configuration.
+     * The values set in this configuration itself are copied deeply, the layers are shared with the copy.
+     *
+     * @return Copy of this configuration.
+     */
+    @Override
+    public LayeredConfiguration copy() {
+        final LayeredConfiguration copy = copyInto(new LayeredConfiguration());
+        copy.layers.addAll(this.layers);
+        copy.tombstones.addAll(this.tombstones);
+        copy.setCacheEnabled(this.cacheEnabled);
+        return copy;
+    }
+
+    @Override
+    public Object get(String path, Object def) {
+        // Make sure the path is not null
+        if (path == null)
+            return def;
+
+        // Trim the path
+        path = path.trim();
+
+        // Is the path leading to this section
+        if (path.equals(""))
+            return super.get(path, def);
+
+        // Get the value from the cache if it's still valid
+        final boolean cacheable = this.cacheEnabled && validateCache();
+        if (cacheable) {
+            final Object cached = this.cache.get(path);
+            if (cached != null)
+                return cached == NULL ? def : cached;
+        }
+
+        // Resolve the value, and cache it
+        final Object value = resolve(path);
+        if (cacheable)
+            this.cache.put(path, value != null ? value : NULL);
+        return value != null ? value : def;
+    }
+
+    /**
+     * Resolve the value at the given path through this configuration and its layers.
+     *
+     * @param path Trimmed path of the value.
+     * @return The resolved value, or null if no layer has a value at the given path.
+     */
+    private Object resolve(String path) {
+        // Get the value from this configuration itself
+        Object value = super.get(path, null);
+        if (value != null)
+            return value;
+
+        // Don't resolve paths that are removed through the layers
+        if (isRemoved(canonical(path)))
+            return null;
+
+        // Get the value from the first layer that has it
+        for (ConfigurationSection layer : this.layers) {
+            value = layer.get(path, null);
+            if (value != null)
+                return value;
+        }
+        return null;
+    }
+
+    /**
+     * Make sure the cache is valid, and clear it if this configuration or any of its layers has been modified.
+     *
+     * @return True if values can be cached, false if a layer can't be tracked for modifications.
+     */
+    private boolean validateCache() {
+        // Get the modification stamp of this configuration and all layers
+        final long stamp = getModificationStamp();
+        if (stamp < 0)
+            return false;
+
+        // Clear the cache if anything has been modified
+        if (stamp != this.cacheStamp) {
+            this.cache.clear();
+            this.cacheStamp = stamp;
+        }
+        return true;
+    }
+
+    /**
+     * Get the modification stamp of this configuration and its layers.
+     * Layers that are layered configurations themselves include the stamps of their own layers, so modifying a layer
+     * at any depth changes the stamp.
+     *
+     * @return Modification stamp, or -1 if a layer can't be tracked for modifications.
+     */
+    @Override
+    long getModificationStamp() {
+        // Sum the modification counts, which only ever increase
+        long stamp = getModCount() + this.tombstoneCount;
+        for (ConfigurationSection layer : this.layers) {
+            final Configuration configuration = layer.getConfiguration();
+            final long layerStamp = configuration != null ? configuration.getModificationStamp() : -1;
+            if (layerStamp < 0)
+                return -1;
+            stamp += layerStamp;
+        }
+        return stamp;
+    }
+
+    /**
+     * Get the canonical form of the given path, without empty keys and whitespace around keys.
+     *
+     * @param path Path.
+     * @return Canonical path.
+     */
+    private static String canonical(String path) {
+        final StringBuilder out = new StringBuilder(path.length());
+        for (String key : path.split("\\.")) {
+            key = key.trim();
+            if (key.isEmpty())
+                continue;
+            if (out.length() > 0)
+                out.append('.');
+            out.append(key);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Join the given canonical path of a section with a path relative to it.
+     *
+     * @param path    Canonical path of the section.
+     * @param subPath Path relative to the section.
+     * @return Canonical joined path.
+     */
+    private static String join(String path, String subPath) {
+        final String child = canonical(subPath);
+        if (path.isEmpty() || child.isEmpty())
+            return path.isEmpty() ? child : path;
+        return child.startsWith("[") ? path + child : path + "." + child;
+    }
+
+    /**
+     * Check whether the given path, or any of its parents, is removed through the layers.
+     *
+     * @param path Canonical path.
+     * @return True if the values of the layers at the given path are hidden.
+     */
+    private boolean isRemoved(String path) {
+        // Check the path itself and every parent path, including the paths holding list elements
+        if (this.tombstones.isEmpty())
+            return false;
+        for (int i = 1; i <= path.length(); i++)
+            if ((i == path.length() || path.charAt(i) == '.' || path.charAt(i) == '[')
+                && this.tombstones.contains(path.substring(0, i)))
+                return true;
+        return false;
+    }
+
+    @Override
+    public boolean isSet(String path) {
+        return get(path) != null;
+    }
+
+    /**
+     * Remove the section at the given path, including its value and all its sub-sections.
+     * If any layer has a value or section at the given path, it's hidden as well, including everything below it. The
+     * layers themselves are never modified.
+     *
+     * @param path  Path of the section to remove.
+     * @param prune True to also remove parent sections of this configuration itself that become empty.
+     * @return True if a section was removed or hidden, false if there was nothing at the given path.
+     */
+    @Override
+    public boolean remove(String path, boolean prune) {
+        // Make sure the path is not null, and this configuration can be modified
+        if (path == null)
+            return false;
+        checkModifiable();
+        final String key = canonical(path);
+        if (key.isEmpty())
+            return false;
+
+        // Remove the section from this configuration itself
+        boolean removed = super.remove(path, prune);
+
+        // Hide the values of the layers, unless they're hidden already
+        if (!isRemoved(key) && isLayered(key)) {
+            this.tombstones.removeIf(tombstone -> tombstone.startsWith(key + ".") || tombstone.startsWith(key + "["));
+            this.tombstones.add(key);
+            this.tombstoneCount++;
+            removed = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Check whether any layer has a value or section at the given path.
+     *
+     * @param path Canonical path.
+     * @return True if any layer has something at the given path.
+     */
+    private boolean isLayered(String path) {
+        for (ConfigurationSection layer : this.layers)
+            if (layer.getConfigurationSection(path) != null)
+                return true;
+        return false;
+    }
+
+    @Override
+    public List<String> getKeys(String path) {
+        // Make sure the path is not null
+        if (path == null)
+            return new ArrayList<>();
+
+        // Collect the keys of this configuration and all layers, in order of precedence, skipping removed keys
+        final String key = canonical(path);
+        final Set<String> keys = new LinkedHashSet<>(super.getKeys(path));
+        if (!isRemoved(key))
+            for (ConfigurationSection layer : this.layers)
+                for (String child : layer.getKeys(path))
+                    if (!isRemoved(join(key, child)))
+                        keys.add(child);
+        return new ArrayList<>(keys);
+    }
+
+    @Override
+    public boolean isConfigurationSection(String path) {
+        // Make sure the path is not null
+        if (path == null)
+            return false;
+
+        // Check this configuration itself, and the layers unless the path is removed
+        if (hasSection(path))
+            return true;
+        if (isRemoved(canonical(path)))
+            return false;
+        for (ConfigurationSection layer : this.layers)
+            if (layer.isConfigurationSection(path))
+                return true;
+        return false;
+    }
+
+    /**
+     * Get a view of the configuration section at the given path.
+     * The view resolves everything through this configuration by its full path, so it sees the layers as well.
+     *
+     * @param path Path of the section.
+     * @return View of the section, this configuration for an empty path, or null if no layer has the section.
+     */
+    @Override
+    public ConfigurationSection getConfigurationSection(String path) {
+        // Make sure the path is not null
+        if (path == null)
+            return null;
+
+        // Is the path leading to this configuration
+        final String key = canonical(path);
+        if (key.isEmpty())
+            return this;
+
+        // Return a view if this configuration or any layer that isn't hidden has the section
+        if (findSection(key) == null && (isRemoved(key) || !isLayered(key)))
+            return null;
+        return new SectionView(this, key);
+    }
+
+    /**
+     * Create a new configuration section in this configuration itself, and get a view of it.
+     * See {@link #getConfigurationSection(String)}.
+     *
+     * @param path Path of the new section.
+     * @return View of the section, this configuration for an empty path, or null if the path was invalid.
+     */
+    @Override
+    public ConfigurationSection createConfigurationSection(String path) {
+        final ConfigurationSection section = super.createConfigurationSection(path);
+        if (section == null || section == this)
+            return section;
+        return new SectionView(this, canonical(path));
+    }
+
+    /**
+     * Get the list value at the given path as a list of sections.
+     * List element sections of layers are returned as views, so they can't be used to modify the layers.
+     *
+     * @param path Path of the value containing the list.
+     * @return Unmodifiable list of sections, or an empty list if the value isn't a list.
+     */
+    @Override
+    public List<ConfigurationSection> getSectionList(String path) {
+        // Get the sections, and replace the list element sections of layers with views
+        final List<ConfigurationSection> sections = super.getSectionList(path);
+        final List<ConfigurationSection> out = new ArrayList<>(sections.size());
+        for (ConfigurationSection section : sections)
+            if (section.isListElement() && section.getRoot() != this)
+                out.add(new SectionView(this, join(canonical(path), section.getKey())));
+            else
+                out.add(section);
+        return Collections.unmodifiableList(out);
+    }
+
+    /**
+     * Find the list element section holding the given field value, in the list value at the given path.
+     * Elements of a list in a layer are returned as views, so they can't be used to modify the layer.
+     *
+     * @param path  Path of the value containing the list.
+     * @param field Path of the field within the list elements.
+     * @param value Field value to find.
+     * @return The first list element section with the given field value, or null if there is none.
+     */
+    @Override
+    public ConfigurationSection findListElement(String path, String field, Object value) {
+        // Make sure the path is not null
+        if (path == null)
+            return null;
+
+        // Find the element in this configuration itself if it has the list
+        final ConfigurationSection section = findSection(path);
+        if (section != null && section.get() != null)
+            return super.findListElement(path, field, value);
+
+        // Find the element in the first layer that has the list, unless it's removed
+        final String key = canonical(path);
+        if (isRemoved(key))
+            return null;
+        for (ConfigurationSection layer : this.layers) {
+            if (layer.get(key) == null)
+                continue;
+            final ConfigurationSection element = layer.findListElement(key, field, value);
+            return element != null ? new SectionView(this, join(key, element.getKey())) : null;
+        }
+        return null;
+    }
+
+    @Override
+    public Map<String, Object> getValues() {
+        return getValues("");
+    }
+
+    /**
+     * Get the resolved keys and values of the section at the given path as nested maps.
+     *
+     * @param path Canonical path of the section.
+     * @return Map containing all resolved keys and values.
+     */
+    private Map<String, Object> getValues(String path) {
+        // Resolve each key, and get the values of sections as nested maps
+        final Map<String, Object> out = new LinkedHashMap<>();
+        for (String key : getKeys(path)) {
+            final String child = join(path, key);
+            final Object value = get(child);
+            out.put(key, value instanceof SectionList ? getValues(child) : exportValue(value));
+        }
+        return out;
+    }
+
+    @Override
+    public Map<String, Object> getValues(boolean deep) {
+        // Return nested maps if a flat map isn't requested
+        if (!deep)
+            return getValues();
+
+        // Flatten the merged nested maps
+        final Map<String, Object> out = new LinkedHashMap<>();
+        flattenValues(getValues(), "", out);
+        return out;
+    }
+
+    /**
+     * Layered configurations can't be walked, see the class documentation.
+     *
+     * @param visitor Visitor.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void accept(ConfigurationVisitor visitor) {
+        throw unwalkable();
+    }
+
+    /**
+     * Layered configurations can't be walked, see the class documentation.
+     *
+     * @return Nothing.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public Stream<ConfigurationSection> stream() {
+        throw unwalkable();
+    }
+
+    /**
+     * Layered configurations can't be walked, see the class documentation.
+     *
+     * @return Nothing.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public Stream<ConfigurationSection> parallelStream() {
+        throw unwalkable();
+    }
+
+    /**
+     * Layered configurations can't be walked, see the class documentation.
+     *
+     * @param query Query.
+     * @return Nothing.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public Stream<ConfigurationSection> query(PathQuery query) {
+        throw unwalkable();
+    }
+
+    /**
+     * Create the exception thrown when walking the layered tree.
+     *
+     * @return The exception.
+     */
+    private static UnsupportedOperationException unwalkable() {
+        return new UnsupportedOperationException("Layered configurations can't be walked, use getValues(true) instead");
+    }
+
+    /**
+     * Flatten the given nested values into the given flat map.
+     *
+     * @param values Nested values to flatten.
+     * @param prefix Path prefix for the keys of the values.
+     * @param out    Flat map to put the values in.
+     */
+    private static void flattenValues(Map<?, ?> values, String prefix, Map<String, Object> out) {
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            final String path = prefix + entry.getKey();
+            if (entry.getValue() instanceof Map)
+                flattenValues((Map<?, ?>) entry.getValue(), path + ".", out);
+            else
+                out.put(path, entry.getValue());
+        }
+    }
+
+    /**
+     * View of a section of a layered configuration.
+     * Everything is resolved through the layered configuration by the full path of the section, so the view sees the
+     * layers as well, and values set through it are set in the layered configuration itself.
+     */
+    private static final class SectionView extends ConfigurationSection {
+
+        /**
+         * Layered configuration this is a view of.
+         */
+        private final LayeredConfiguration owner;
+
+        /**
+         * Canonical full path of the section.
+         */
+        private final String path;
+
+        /**
+         * Constructor.
+         *
+         * @param owner Layered configuration this is a view of.
+         * @param path  Canonical full path of the section.
+         */
+        private SectionView(LayeredConfiguration owner, String path) {
+            // Use the last key of the path as key, list element keys include their brackets
+            super(path.substring(Math.max(path.lastIndexOf('.'), path.lastIndexOf('[') - 1) + 1), null);
+            this.owner = owner;
+            this.path = path;
+        }
+
+        @Override
+        public String getPath() {
+            return this.path;
+        }
+
+        @Override
+        public Object get(String path, Object def) {
+            return path != null ? this.owner.get(join(this.path, path), def) : def;
+        }
+
+        @Override
+        public boolean isSet(String path) {
+            return path != null && this.owner.isSet(join(this.path, path));
+        }
+
+        @Override
+        public void set(String path, Object value) {
+            if (path != null)
+                this.owner.set(join(this.path, path), value);
+        }
+
+        @Override
+        public boolean remove(String path, boolean prune) {
+            // This section itself can't be removed through the view
+            if (path == null || canonical(path).isEmpty())
+                return false;
+            return this.owner.remove(join(this.path, path), prune);
+        }
+
+        @Override
+        public List<String> getKeys(String path) {
+            return path != null ? this.owner.getKeys(join(this.path, path)) : new ArrayList<>();
+        }
+
+        @Override
+        public boolean isHoldingConfigurationSections() {
+            return !this.owner.getKeys(this.path).isEmpty();
+        }
+
+        @Override
+        public boolean isConfigurationSection(String path) {
+            return path != null && this.owner.isConfigurationSection(join(this.path, path));
+        }
+
+        @Override
+        public ConfigurationSection getConfigurationSection(String path) {
+            if (path == null)
+                return null;
+            return canonical(path).isEmpty() ? this : this.owner.getConfigurationSection(join(this.path, path));
+        }
+
+        @Override
+        public ConfigurationSection createConfigurationSection(String path) {
+            if (path == null)
+                return null;
+            return canonical(path).isEmpty() ? this : this.owner.createConfigurationSection(join(this.path, path));
+        }
+
+        @Override
+        public List<ConfigurationSection> getSectionList(String path) {
+            return path != null ? this.owner.getSectionList(join(this.path, path)) : Collections.emptyList();
+        }
+
+        @Override
+        public ConfigurationSection findListElement(String path, String field, Object value) {
+            return path != null ? this.owner.findListElement(join(this.path, path), field, value) : null;
+        }
+
+        @Override
+        public Map<String, Object> getValues() {
+            return this.owner.getValues(this.path);
+        }
+
+        @Override
+        public Map<String, Object> getValues(boolean deep) {
+            // Return nested maps if a flat map isn't requested
+            if (!deep)
+                return getValues();
+
+            // Flatten the merged nested maps
+            final Map<String, Object> out = new LinkedHashMap<>();
+            flattenValues(getValues(), "", out);
+            return out;
+        }
+
+        /**
+         * Create a detached copy of the resolved values of this section.
+         *
+         * @return Copy of this section.
+         */
+        @Override
+        public ConfigurationSection copy() {
+            final ConfigurationSection copy = new ConfigurationSection(getKey(), null);
+            if (isHoldingConfigurationSections())
+                copy.loadValues(getValues());
+            else
+                copy.set(copyValue(get(), copy));
+            return copy;
+        }
+
+        @Override
+        public void batch(Consumer<ConfigurationBatch> changes) {
+            throw new UnsupportedOperationException("Sections of layered configurations can't apply batches");
+        }
+
+        @Override
+        public void merge(ConfigurationSection other, MergeStrategy strategy) {
+            throw new UnsupportedOperationException("Sections of layered configurations can't be merged into");
+        }
+
+        @Override
+        public void accept(ConfigurationVisitor visitor) {
+            throw unwalkable();
+        }
+
+        @Override
+        public Stream<ConfigurationSection> stream() {
+            throw unwalkable();
+        }
+
+        @Override
+        public Stream<ConfigurationSection> parallelStream() {
+            throw unwalkable();
+        }
+
+        @Override
+        public Stream<ConfigurationSection> query(PathQuery query) {
+            throw unwalkable();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.timvisee.yamlwrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Registry of the listeners of a configuration, dispatching the changes of each completed modification or batch.
+ * Listeners are indexed in a tree by the literal keys their pattern starts with, so a change is only matched against
+ * the listeners whose pattern can match its path.
+ */
+final class ListenerRegistry implements ChangeRecorder {
+
+    /**
+     * Node in the tree of listeners, for a literal key.
+     */
+    private static final class Node {
+
+        /**
+         * Child nodes by their key, or null if there are none.
+         */
+        private Map<String, Node> children;
+
+        /**
+         * Listeners of which the literal keys of the pattern end at this node, or null if there are none.
+         */
+        private List<Listener> listeners;
+    }
+
+    /**
+     * Listener registered for a pattern.
+     */
+    private static final class Listener {
+
+        /**
+         * Query of the full path pattern.
+         */
+        private final PathQuery query;
+
+        /**
+         * The listener.
+         */
+        private final ConfigurationListener listener;
+
+        /**
+         * Matching paths changed in the current modification, or null if there are none.
+         */
+        private Set<String> changed;
+
+        /**
+         * Constructor.
+         *
+         * @param query    Query of the full path pattern.
+         * @param listener The listener.
+         */
+        private Listener(PathQuery query, ConfigurationListener listener) {
+            this.query = query;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Root node of the listener tree.
+     */
+    private final Node root = new Node();
+
+    /**
+     * Paths of the sections changed in the current modification, and whether their subtree was changed as a whole.
+     */
+    private final Map<String, Boolean> changed = new LinkedHashMap<>();
+
+    /**
+     * Executor to notify listeners on.
+     */
+    private Executor executor = Runnable::run;
+
+    /**
+     * Number of registered listeners.
+     */
+    private int size = 0;
+
+    /**
+     * Set the executor to notify listeners on.
+     *
+     * @param executor The executor.
+     */
+    synchronized void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Register a listener for the given full path pattern.
+     *
+     * @param query    Query of the full path pattern.
+     * @param listener The listener.
+     */
+    synchronized void add(PathQuery query, ConfigurationListener listener) {
+        // Find or create the node of the literal keys the pattern starts with
+        Node node = this.root;
+        for (String key : query.getLiteralPrefix()) {
+            if (node.children == null)
+                node.children = new HashMap<>();
+            node = node.children.computeIfAbsent(key, k -> new Node());
+        }
+
+        // Register the listener
+        if (node.listeners == null)
+            node.listeners = new ArrayList<>(1);
+        node.listeners.add(new Listener(query, listener));
+        this.size++;
+    }
+
+    /**
+     * Remove all registrations of the given listener.
+     *
+     * @param listener The listener.
+     * @return True if any registration was removed.
+     */
+    synchronized boolean remove(ConfigurationListener listener) {
+        final int size = this.size;
+        remove(this.root, listener);
+        return this.size != size;
+    }
+
+    /**
+     * Remove all registrations of the given listener from the given node and its child nodes.
+     * Nodes that become empty are removed.
+     *
+     * @param node     The node.
+     * @param listener The listener.
+     * @return True if the node became empty.
+     */
+    private boolean remove(Node node, ConfigurationListener listener) {
+        if (node.listeners != null) {
+            for (int i = node.listeners.size() - 1; i >= 0; i--) {
+                if (node.listeners.get(i).listener == listener) {
+                    node.listeners.remove(i);
+                    this.size--;
+                }
+            }
+            if (node.listeners.isEmpty())
+                node.listeners = null;
+        }
+        if (node.children != null) {
+            node.children.values().removeIf(child -> remove(child, listener));
+            if (node.children.isEmpty())
+                node.children = null;
+        }
+        return node.listeners == null && node.children == null;
+    }
+
+    /**
+     * Check whether any listener is registered.
+     *
+     * @return True if there are no listeners.
+     */
+    synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public synchronized void changed(ConfigurationSection section, boolean subtree) {
+        this.changed.merge(section.getPath(), subtree, Boolean::logicalOr);
+    }
+
+    @Override
+    public void committed() {
+        // Match the changed paths, and collect the notifications of each listener with all its matching paths
+        final List<Runnable> notifications = new ArrayList<>();
+        final Executor executor;
+        synchronized (this) {
+            final List<Listener> notified = new ArrayList<>();
+            for (Map.Entry<String, Boolean> change : this.changed.entrySet())
+                match(change.getKey(), change.getValue(), notified);
+            this.changed.clear();
+            for (Listener listener : notified) {
+                final List<String> paths = new ArrayList<>(listener.changed);
+                listener.changed = null;
+                notifications.add(() -> listener.listener.onChange(paths));
+            }
+            executor = this.executor;
+        }
+
+        // Notify the listeners outside of the lock, as they may run on the calling thread
+        // A listener that fails doesn't prevent the others from being notified, the failure is thrown afterwards
+        RuntimeException failure = null;
+        for (Runnable notification : notifications) {
+            try {
+                executor.execute(notification);
+            } catch (RuntimeException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Match a changed path against the listeners whose pattern can match it.
+     * A path matches if the pattern matches it, or if its whole subtree changed and the pattern can match paths in it.
+     *
+     * @param path     Path of the changed section.
+     * @param subtree  True if the subtree of the section changed as a whole.
+     * @param notified Listeners to notify, to which newly matched listeners are added.
+     */
+    private void match(String path, boolean subtree, List<Listener> notified) {
+        // Walk the listener tree along the keys of the path, the patterns of the visited nodes may match
+        Node node = this.root;
+        final String[] keys = path.isEmpty() ? new String[0] : path.split("\\.");
+        for (int i = 0; ; i++) {
+            matchListeners(node, path, subtree, notified);
+            if (i == keys.length || node.children == null)
+                break;
+            node = node.children.get(keys[i].trim());
+            if (node == null)
+                return;
+        }
+
+        // Patterns with more literal keys than the path can only be affected if the subtree changed as a whole
+        if (subtree && node.children != null)
+            for (Node child : node.children.values())
+                matchSubtree(child, path, notified);
+    }
+
+    /**
+     * Match a changed subtree against the listeners of the given node and all its child nodes.
+     *
+     * @param node     The node.
+     * @param path     Path of the changed section.
+     * @param notified Listeners to notify, to which newly matched listeners are added.
+     */
+    private void matchSubtree(Node node, String path, List<Listener> notified) {
+        matchListeners(node, path, true, notified);
+        if (node.children != null)
+            for (Node child : node.children.values())
+                matchSubtree(child, path, notified);
+    }
+
+    /**
+     * Match a changed path against the listeners of the given node.
+     *
+     * @param node     The node.
+     * @param path     Path of the changed section.
+     * @param subtree  True if the subtree of the section changed as a whole.
+     * @param notified Listeners to notify, to which newly matched listeners are added.
+     */
+    private static void matchListeners(Node node, String path, boolean subtree, List<Listener> notified) {
+        if (node.listeners == null)
+            return;
+        for (Listener listener : node.listeners) {
+            final long states = listener.query.match(path);
+            if (!listener.query.accepts(states) && !(subtree && states != 0))
+                continue;
+            if (listener.changed == null) {
+                listener.changed = new LinkedHashSet<>();
+                notified.add(listener);
+            }
+            listener.changed.add(path);
+        }
+    }
+}
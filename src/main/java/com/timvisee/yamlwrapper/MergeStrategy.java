@@ -0,0 +1,23 @@
+package com.timvisee.yamlwrapper;
+
+/**
+ * Strategy used to merge configuration section trees.
+ * See {@link ConfigurationSection#merge(ConfigurationSection, MergeStrategy)}.
+ */
+public enum MergeStrategy {
+
+    /**
+     * Values that are merged in replace existing values, lists included.
+     */
+    REPLACE,
+
+    /**
+     * Values that are merged in replace existing values, but lists are appended to existing lists.
+     */
+    APPEND,
+
+    /**
+     * Existing values are kept, only values that don't exist yet are merged in.
+     */
+    KEEP_EXISTING
+}
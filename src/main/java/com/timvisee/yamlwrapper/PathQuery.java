@@ -0,0 +1,395 @@
+package com.timvisee.yamlwrapper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Compiled path pattern, to query the sections of a configuration section tree.
+ * See {@link ConfigurationSection#query(String)}.
+ * <p>
+ * Patterns are paths of which keys may be wildcards. A {@code *} key matches any single key, a {@code **} key matches
+ * any number of keys including none, and a key containing {@code *} like {@code db-*} matches keys of that form. For
+ * example, {@code tenants.*.limits.**} matches the {@code limits} section of every tenant and all its sub-sections.
+ * <p>
+ * A query only walks the branches of the tree that can still match the pattern, and looks up literal keys directly
+ * instead of scanning all child sections. A compiled query is immutable, and can be reused and shared between threads.
+ */
+public final class PathQuery {
+
+    /**
+     * Segment matching a literal key.
+     */
+    private static final int LITERAL = 0;
+
+    /**
+     * Segment matching any single key.
+     */
+    private static final int ANY = 1;
+
+    /**
+     * Segment matching any number of keys.
+     */
+    private static final int DEEP = 2;
+
+    /**
+     * Segment matching keys of a wildcard form.
+     */
+    private static final int GLOB = 3;
+
+    /**
+     * Maximum number of segments in a pattern, so the match states fit in a long.
+     */
+    private static final int MAX_SEGMENTS = 63;
+
+    /**
+     * The pattern this query was compiled from.
+     */
+    private final String pattern;
+
+    /**
+     * Segment types.
+     */
+    private final int[] types;
+
+    /**
+     * Segment keys, or the wildcard form for glob segments.
+     */
+    private final String[] keys;
+
+    /**
+     * Match states of the start of the pattern.
+     */
+    private final long start;
+
+    /**
+     * Match state of the end of the pattern.
+     */
+    private final long accept;
+
+    /**
+     * Constructor.
+     *
+     * @param pattern The pattern.
+     * @param types   Segment types.
+     * @param keys    Segment keys.
+     */
+    private PathQuery(String pattern, int[] types, String[] keys) {
+        this.pattern = pattern;
+        this.types = types;
+        this.keys = keys;
+        this.accept = 1L << types.length;
+        this.start = closure(1L);
+    }
+
+    /**
+     * Compile the given path pattern.
+     *
+     * @param pattern Path pattern.
+     * @return Compiled query.
+     * @throws IllegalArgumentException If the pattern is null, or has too many keys.
+     */
+    public static PathQuery compile(String pattern) {
+        // Make sure the pattern is not null
+        if (pattern == null)
+            throw new IllegalArgumentException("Pattern must not be null");
+
+        // Parse the segments, skipping empty keys like paths do, and repeated deep wildcards that match the same
+        final String[] parts = pattern.split("\\.");
+        final int[] types = new int[parts.length];
+        final String[] keys = new String[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            final String key = part.trim();
+            if (key.isEmpty())
+                continue;
+            final int type = key.equals("**") ? DEEP : key.equals("*") ? ANY : key.indexOf('*') >= 0 ? GLOB : LITERAL;
+            if (type == DEEP && count > 0 && types[count - 1] == DEEP)
+                continue;
+            if (count == MAX_SEGMENTS)
+                throw new IllegalArgumentException("Pattern has more than " + MAX_SEGMENTS + " keys: " + pattern);
+            types[count] = type;
+            keys[count] = key;
+            count++;
+        }
+
+        // Compile the query
+        final int[] compiledTypes = new int[count];
+        final String[] compiledKeys = new String[count];
+        System.arraycopy(types, 0, compiledTypes, 0, count);
+        System.arraycopy(keys, 0, compiledKeys, 0, count);
+        return new PathQuery(pattern.trim(), compiledTypes, compiledKeys);
+    }
+
+    /**
+     * Get the pattern this query was compiled from.
+     *
+     * @return The pattern.
+     */
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * Check whether the given path matches this query.
+     *
+     * @param path Path to check, relative to the section the query would be applied to.
+     * @return True if the path matches, false if not.
+     */
+    public boolean matches(String path) {
+        // Make sure the path is not null
+        if (path == null)
+            return false;
+
+        return accepts(match(path));
+    }
+
+    /**
+     * Get the match states reached by matching all keys of the given path.
+     *
+     * @param path Path to match, relative to the section the query would be applied to.
+     * @return Reached match states, or zero if nothing can match anymore.
+     */
+    long match(String path) {
+        // Advance the match states over each key of the path
+        long states = this.start;
+        for (String key : path.split("\\.")) {
+            key = key.trim();
+            if (key.isEmpty())
+                continue;
+            states = next(states, key);
+            if (states == 0)
+                return 0;
+        }
+        return states;
+    }
+
+    /**
+     * Get the literal keys at the start of the pattern, before its first wildcard.
+     *
+     * @return The literal keys, which are empty if the pattern starts with a wildcard.
+     */
+    String[] getLiteralPrefix() {
+        int length = 0;
+        while (length < this.types.length && this.types[length] == LITERAL)
+            length++;
+        final String[] prefix = new String[length];
+        System.arraycopy(this.keys, 0, prefix, 0, length);
+        return prefix;
+    }
+
+    /**
+     * Get a lazy stream of the sections in the given section tree that match this query, in depth first order.
+     * The given section itself matches the empty path. The section tree must not be modified while the stream is used.
+     *
+     * @param section Section to apply the query to.
+     * @return Stream of matching sections.
+     */
+    public Stream<ConfigurationSection> stream(ConfigurationSection section) {
+        return StreamSupport.stream(new QuerySpliterator(section), false);
+    }
+
+    /**
+     * Get the match states of the start of the pattern, for the section a query is applied to.
+     *
+     * @return Match states.
+     */
+    long start() {
+        return this.start;
+    }
+
+    /**
+     * Check whether the given match states match the whole pattern.
+     *
+     * @param states Match states.
+     * @return True if the pattern is matched, false if not.
+     */
+    boolean accepts(long states) {
+        return (states & this.accept) != 0;
+    }
+
+    /**
+     * Get the match states reached by also matching any number of keys for deep segments.
+     *
+     * @param states Match states.
+     * @return Match states including the ones after deep segments.
+     */
+    private long closure(long states) {
+        for (int i = 0; i < this.types.length; i++)
+            if (this.types[i] == DEEP && (states & (1L << i)) != 0)
+                states |= 1L << (i + 1);
+        return states;
+    }
+
+    /**
+     * Get the match states reached by matching the given key from the given match states.
+     *
+     * @param states Match states.
+     * @param key    Key to match.
+     * @return Reached match states, or zero if nothing can match anymore.
+     */
+    long next(long states, String key) {
+        long next = 0;
+        for (int i = 0; i < this.types.length; i++) {
+            // Skip segments that aren't being matched
+            if ((states & (1L << i)) == 0)
+                continue;
+
+            // Deep segments keep matching, the others move on to the next segment if the key matches
+            switch (this.types[i]) {
+                case DEEP:
+                    next |= 1L << i;
+                    break;
+                case ANY:
+                    next |= 1L << (i + 1);
+                    break;
+                case GLOB:
+                    if (globMatches(this.keys[i], key))
+                        next |= 1L << (i + 1);
+                    break;
+                default:
+                    if (this.keys[i].equals(key))
+                        next |= 1L << (i + 1);
+            }
+        }
+        return closure(next);
+    }
+
+    /**
+     * Check whether the given key matches the given wildcard form.
+     *
+     * @param glob Wildcard form, in which {@code *} matches any number of characters.
+     * @param key  Key to check.
+     * @return True if the key matches, false if not.
+     */
+    private static boolean globMatches(String glob, String key) {
+        // Match the parts between the wildcards in order, the first and last part must be at the edges
+        final String[] parts = glob.split("\\*", -1);
+        if (!key.startsWith(parts[0]))
+            return false;
+        int from = parts[0].length();
+        for (int i = 1; i < parts.length - 1; i++) {
+            final int index = key.indexOf(parts[i], from);
+            if (index < 0)
+                return false;
+            from = index + parts[i].length();
+        }
+        final String last = parts[parts.length - 1];
+        return key.length() - last.length() >= from && key.endsWith(last);
+    }
+
+    /**
+     * Get the single literal key that must be matched from the given match states.
+     *
+     * @param states Match states.
+     * @return The literal key, or null if the match states can match other keys too.
+     */
+    private String literalKey(long states) {
+        if (Long.bitCount(states) != 1 || (states & this.accept) != 0)
+            return null;
+        final int i = Long.numberOfTrailingZeros(states);
+        return this.types[i] == LITERAL ? this.keys[i] : null;
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+
+    /**
+     * Spliterator walking the branches of a section tree that can match the query.
+     */
+    private final class QuerySpliterator extends Spliterators.AbstractSpliterator<ConfigurationSection> {
+
+        /**
+         * Stack of sections that are pending.
+         */
+        private final Deque<ConfigurationSection> sections = new ArrayDeque<>();
+
+        /**
+         * Stack of match states of the pending sections.
+         */
+        private final Deque<Long> states = new ArrayDeque<>();
+
+        /**
+         * Constructor.
+         *
+         * @param section Section to apply the query to.
+         */
+        private QuerySpliterator(ConfigurationSection section) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL | DISTINCT);
+            pushElements(section, "", PathQuery.this.start);
+            this.sections.push(section);
+            this.states.push(PathQuery.this.start);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ConfigurationSection> action) {
+            while (!this.sections.isEmpty()) {
+                final ConfigurationSection section = this.sections.pop();
+                final long states = this.states.pop();
+
+                // Push the child sections that can still match
+                final SectionList children = section.getChildren();
+                if (children != null && (states & ~PathQuery.this.accept) != 0) {
+                    final String literal = literalKey(states);
+                    if (literal != null) {
+                        // Look up the literal key directly, which may be the key of a list element
+                        final ConfigurationSection child = children.find(literal);
+                        final ConfigurationSection element = child == null ? section.resolveListElement(literal) : null;
+                        if (child != null || element != null) {
+                            this.sections.push(child != null ? child : element);
+                            this.states.push(next(states, literal));
+                        }
+
+                    } else {
+                        // Match the keys of all child sections and their list elements, in reverse order so they are
+                        // taken in order
+                        for (int i = children.size() - 1; i >= 0; i--) {
+                            final ConfigurationSection child = children.get(i);
+                            pushElements(child, child.getKey(), states);
+                            final long next = next(states, child.getKey());
+                            if (next != 0) {
+                                this.sections.push(child);
+                                this.states.push(next);
+                            }
+                        }
+                    }
+                }
+
+                // Return the section if it matches
+                if ((states & PathQuery.this.accept) != 0) {
+                    action.accept(section);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Push the list element sections of the given section that can still match, in reverse order so they are
+         * taken in order. The key of a list element is the key of the list with its index appended, like
+         * {@code list[0]}, and is matched from the match states before the key of the list.
+         *
+         * @param section The section holding the list.
+         * @param key     Key of the section holding the list.
+         * @param states  Match states before the key of the section.
+         */
+        private void pushElements(ConfigurationSection section, String key, long states) {
+            final List<ConfigurationSection> elements = ConfigurationSection.getElements(section.getRawValue());
+            for (int i = elements.size() - 1; i >= 0; i--) {
+                final ConfigurationSection element = elements.get(i);
+                final long next = next(states, key + element.getKey());
+                if (next != 0) {
+                    this.sections.push(element);
+                    this.states.push(next);
+                }
+            }
+        }
+    }
+}
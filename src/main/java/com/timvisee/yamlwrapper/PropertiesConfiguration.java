@@ -0,0 +1,241 @@
+package com.timvisee.yamlwrapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Configuration stored as a Java properties file.
+ * Each property is a flat path like {@code database.host=localhost}, which is loaded into the same section tree as
+ * other formats use. Properties have no types, so all values are loaded as strings, and are saved using their string
+ * representation. Null values can't be represented, and are not saved.
+ * <p>
+ * Files are read and written as ISO-8859-1 with unicode escapes, like {@link Properties} does.
+ */
+public class PropertiesConfiguration extends FileConfiguration {
+
+    /**
+     * Hexadecimal digits for unicode escapes.
+     */
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Constructor.
+     */
+    public PropertiesConfiguration() {
+        super();
+    }
+
+    /**
+     * Create a deep copy of this properties configuration, without parsing it again.
+     *
+     * @return Copy of this configuration.
+     */
+    @Override
+    public PropertiesConfiguration copy() {
+        return copyInto(new PropertiesConfiguration());
+    }
+
+    /**
+     * Load the configuration from the given input stream, which is decoded as ISO-8859-1.
+     *
+     * @param stream Input stream to load the configuration from.
+     * @throws IOException Throws if failed to load the configuration from the given input stream.
+     */
+    @Override
+    public void load(InputStream stream) throws IOException {
+        // Make sure the input stream is not null
+        if (stream == null)
+            return;
+
+        // Load the configuration through a reader, and close the stream
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.ISO_8859_1)) {
+            load(reader);
+        }
+    }
+
+    @Override
+    public void load(Reader reader) throws IOException {
+        // Make sure the reader is not null
+        if (reader == null)
+            return;
+
+        // Read the properties, in the order they're defined in
+        final Map<String, String> properties = new LinkedHashMap<>();
+        new Properties() {
+            @Override
+            public synchronized Object put(Object key, Object value) {
+                return properties.put((String) key, (String) value);
+            }
+        }.load(reader);
+
+        // Load the properties as nested maps, like the other formats are parsed
+        loadDocument(toDocument(properties));
+    }
+
+    /**
+     * Convert the given properties to nested maps, by splitting their keys into paths.
+     * Properties are applied in order like they would be set, so a property replaces the sections or values of
+     * properties before it on the same path, and empty keys in a path are skipped.
+     *
+     * @param properties Properties in the order they're defined in.
+     * @return Nested maps holding the properties.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> toDocument(Map<String, String> properties) {
+        final Map<String, Object> document = new LinkedHashMap<>();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            // Find or create the map holding the last key, replacing values on the way by maps
+            Map<String, Object> map = document;
+            String last = null;
+            for (String key : property.getKey().split("\\.")) {
+                key = key.trim();
+                if (key.isEmpty())
+                    continue;
+                if (last != null) {
+                    final Object child = map.get(last);
+                    if (child instanceof Map)
+                        map = (Map<String, Object>) child;
+                    else {
+                        final Map<String, Object> created = new LinkedHashMap<>();
+                        map.put(last, created);
+                        map = created;
+                    }
+                }
+                last = key;
+            }
+
+            // Set the value, the root value is set for properties without any keys
+            map.put(last != null ? last : "", property.getValue());
+        }
+        return document;
+    }
+
+    /**
+     * Load a properties configuration from the given string.
+     *
+     * @param contents String holding the properties.
+     */
+    @Override
+    public void loadFromString(String contents) {
+        // Make sure the contents are not null
+        if (contents == null)
+            return;
+
+        // Load the configuration
+        try {
+            load(new StringReader(contents));
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Save the configuration to the given output stream, encoded as ISO-8859-1.
+     * The stream is flushed, but not closed.
+     *
+     * @param stream Output stream to save the configuration to.
+     * @throws IOException Throws if failed to save the configuration to the given output stream.
+     */
+    @Override
+    public void save(OutputStream stream) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.ISO_8859_1));
+        save(writer);
+        writer.flush();
+    }
+
+    @Override
+    public void save(Writer writer) throws IOException {
+        // Write a property for each section holding a value
+        final Iterator<ConfigurationSection> sections = stream().iterator();
+        while (sections.hasNext()) {
+            final ConfigurationSection section = sections.next();
+            final Object value = exportValue(section.getRawValue());
+            if (value == null)
+                continue;
+            writeEscaped(section.getPath(), true, writer);
+            writer.write('=');
+            writeEscaped(String.valueOf(value), false, writer);
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Save the properties configuration to a string.
+     *
+     * @return String holding the properties.
+     */
+    @Override
+    public String saveToString() {
+        final StringWriter writer = new StringWriter();
+        try {
+            save(writer);
+        } catch (IOException e) {
+            // Writing to a string never fails
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Write the given key or value escaped, so it's read back the same.
+     *
+     * @param string String to write.
+     * @param key    True if the string is a key, in which all spaces are escaped.
+     * @param writer Writer to write to.
+     * @throws IOException Throws if failed to write.
+     */
+    private static void writeEscaped(String string, boolean key, Writer writer) throws IOException {
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+                case ' ':
+                    if (key || i == 0)
+                        writer.write('\\');
+                    writer.write(' ');
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\f':
+                    writer.write("\\f");
+                    break;
+                case '\\':
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                    writer.write('\\');
+                    writer.write(c);
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        writer.write("\\u");
+                        writer.write(HEX_DIGITS[(c >> 12) & 0xF]);
+                        writer.write(HEX_DIGITS[(c >> 8) & 0xF]);
+                        writer.write(HEX_DIGITS[(c >> 4) & 0xF]);
+                        writer.write(HEX_DIGITS[c & 0xF]);
+                    } else
+                        writer.write(c);
+            }
+        }
+    }
+}
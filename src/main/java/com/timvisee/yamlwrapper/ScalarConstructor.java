@@ -0,0 +1,127 @@
+package com.timvisee.yamlwrapper;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Constructor for single scalars read from YAML parser events, without composing a node graph.
+ * Scalars are resolved and constructed the same way as the safe constructor of SnakeYAML does. Common plain scalars,
+ * such as decimal numbers, booleans, nulls and strings that can't be anything else, are resolved directly without
+ * matching them against the regular expressions of the implicit resolvers.
+ */
+final class ScalarConstructor extends SafeConstructor {
+
+    /**
+     * First characters of plain scalars that may resolve to something else than a string.
+     */
+    private static final String IMPLICIT_FIRST_CHARS = "yYnNtTfFoO-+0123456789.<~=";
+
+    /**
+     * Sentinel for plain scalars that aren't common, and must be resolved normally.
+     */
+    private static final Object UNRESOLVED = new Object();
+
+    /**
+     * Resolver for the tags of implicitly typed scalars.
+     */
+    private final Resolver resolver = new Resolver();
+
+    /**
+     * Resolve the tag of the given scalar event.
+     *
+     * @param event Scalar event.
+     * @return Tag of the scalar.
+     */
+    Tag resolveTag(ScalarEvent event) {
+        final String tag = event.getTag();
+        if (tag == null || tag.equals("!"))
+            return this.resolver.resolve(NodeId.scalar, event.getValue(), event.getImplicit().canOmitTagInPlainScalar());
+        return new Tag(tag);
+    }
+
+    /**
+     * Construct the value of the given scalar event.
+     *
+     * @param event Scalar event.
+     * @return Constructed value.
+     */
+    Object construct(ScalarEvent event) {
+        // Resolve and construct common scalars directly
+        final String tag = event.getTag();
+        if (tag == null || tag.equals("!")) {
+            if (!event.getImplicit().canOmitTagInPlainScalar())
+                return event.getValue();
+            final Object value = constructPlain(event.getValue());
+            if (value != UNRESOLVED)
+                return value;
+        }
+
+        // Resolve the tag, and construct the scalar
+        return construct(event, resolveTag(event));
+    }
+
+    /**
+     * Construct a plain scalar directly, if it's a common scalar.
+     *
+     * @param value Scalar value.
+     * @return Constructed value, or {@link #UNRESOLVED} if the scalar must be resolved normally.
+     */
+    private static Object constructPlain(String value) {
+        // Strings that can't be anything else
+        if (value.isEmpty())
+            return null;
+        final char first = value.charAt(0);
+        if (IMPLICIT_FIRST_CHARS.indexOf(first) < 0)
+            return value;
+
+        // Booleans and nulls
+        switch (value) {
+            case "true": case "True": case "TRUE": case "yes": case "Yes": case "YES": case "on": case "On": case "ON":
+                return Boolean.TRUE;
+            case "false": case "False": case "FALSE": case "no": case "No": case "NO": case "off": case "Off": case "OFF":
+                return Boolean.FALSE;
+            case "~": case "null": case "Null": case "NULL":
+                return null;
+            default:
+        }
+
+        // Decimal integers and simple floats, anything else like octal, hexadecimal, sexagesimal, exponents and
+        // timestamps is resolved normally
+        final int start = first == '-' || first == '+' ? 1 : 0;
+        final int length = value.length();
+        if (start == length || value.charAt(start) == '0' && length > start + 1 && value.charAt(start + 1) != '.')
+            return UNRESOLVED;
+        int dot = -1;
+        for (int i = start; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c == '.' && dot < 0 && i > start && i < length - 1)
+                dot = i;
+            else if (c < '0' || c > '9')
+                return UNRESOLVED;
+        }
+        if (dot >= 0)
+            return Double.parseDouble(value);
+        if (length - start > 18)
+            return UNRESOLVED;
+        final long number = Long.parseLong(value);
+        return number == (int) number ? (Object) (int) number : (Object) number;
+    }
+
+    /**
+     * Construct the value of the given scalar event, with an already resolved tag.
+     *
+     * @param event Scalar event.
+     * @param tag   Resolved tag of the scalar.
+     * @return Constructed value.
+     */
+    Object construct(ScalarEvent event, Tag tag) {
+        final ScalarNode node = new ScalarNode(tag, true, event.getValue(), event.getStartMark(), event.getEndMark(),
+            event.getScalarStyle());
+        return getConstructor(node).construct(node);
+    }
+}
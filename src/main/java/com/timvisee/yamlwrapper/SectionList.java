@@ -0,0 +1,174 @@
+package com.timvisee.yamlwrapper;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Array backed list holding the child sections of a configuration section.
+ * Unlike an {@link java.util.ArrayList}, storage starts at a single slot and can be trimmed to the exact size, which
+ * keeps the overhead low for the many narrow sections in large configurations.
+ * Being a distinct type, it also tells child sections apart from list values.
+ * Wide lists build a hash index of their sections by key on demand, so sections can be found in constant time.
+ */
+final class SectionList extends AbstractList<ConfigurationSection> implements RandomAccess {
+
+    /**
+     * Shared empty storage.
+     */
+    private static final ConfigurationSection[] EMPTY = new ConfigurationSection[0];
+
+    /**
+     * Number of sections above which a hash index is used to find sections by key.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
+    /**
+     * Section storage.
+     */
+    private ConfigurationSection[] sections = EMPTY;
+
+    /**
+     * Number of sections in this list.
+     */
+    private int size;
+
+    /**
+     * Index of sections by key, or null if it isn't built.
+     */
+    private Map<String, ConfigurationSection> index;
+
+    @Override
+    public ConfigurationSection get(int index) {
+        checkIndex(index, this.size);
+        return this.sections[index];
+    }
+
+    @Override
+    public ConfigurationSection set(int index, ConfigurationSection section) {
+        checkIndex(index, this.size);
+        final ConfigurationSection previous = this.sections[index];
+        this.sections[index] = section;
+
+        // Update the index
+        if (this.index != null) {
+            this.index.remove(previous.getKey());
+            this.index.put(section.getKey(), section);
+        }
+        return previous;
+    }
+
+    @Override
+    public void add(int index, ConfigurationSection section) {
+        checkIndex(index, this.size + 1);
+
+        // Grow the storage if it's full
+        if (this.size == this.sections.length)
+            this.sections = Arrays.copyOf(this.sections, this.size + (this.size >> 1) + 1);
+
+        // Insert the section
+        System.arraycopy(this.sections, index, this.sections, index + 1, this.size - index);
+        this.sections[index] = section;
+        this.size++;
+        this.modCount++;
+
+        // Update the index
+        if (this.index != null)
+            this.index.put(section.getKey(), section);
+    }
+
+    @Override
+    public ConfigurationSection remove(int index) {
+        checkIndex(index, this.size);
+
+        // Remove the section and shift the remaining sections
+        final ConfigurationSection previous = this.sections[index];
+        System.arraycopy(this.sections, index + 1, this.sections, index, this.size - index - 1);
+        this.sections[--this.size] = null;
+        this.modCount++;
+
+        // Shrink the storage if it's mostly unused
+        if (this.size <= this.sections.length >> 2)
+            this.sections = this.size == 0 ? EMPTY : Arrays.copyOf(this.sections, this.size << 1);
+
+        // Update the index, drop it if the list isn't wide anymore
+        if (this.index != null)
+            this.index.remove(previous.getKey());
+        if (this.size <= INDEX_THRESHOLD >> 1)
+            this.index = null;
+        return previous;
+    }
+
+    @Override
+    public boolean remove(Object section) {
+        // Find the section by identity
+        for (int i = 0; i < this.size; i++) {
+            if (this.sections[i] == section) {
+                remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Find the section with the given key.
+     *
+     * @param key Key of the section.
+     * @return The section, or null if this list doesn't contain a section with the given key.
+     */
+    ConfigurationSection find(String key) {
+        // Build the index for wide lists, and use it
+        buildIndex();
+        if (this.index != null)
+            return this.index.get(key);
+
+        // Find the section by comparing keys
+        for (int i = 0; i < this.size; i++) {
+            // Interned keys are identical, only compare contents if they aren't
+            final String sectionKey = this.sections[i].getKey();
+            if (sectionKey == key || sectionKey.equals(key))
+                return this.sections[i];
+        }
+        return null;
+    }
+
+    /**
+     * Build the index of sections by key if this list is wide, and it isn't built yet.
+     */
+    void buildIndex() {
+        if (this.index == null && this.size > INDEX_THRESHOLD) {
+            final Map<String, ConfigurationSection> index = new HashMap<>();
+            for (int i = 0; i < this.size; i++)
+                index.put(this.sections[i].getKey(), this.sections[i]);
+            this.index = index;
+        }
+    }
+
+    /**
+     * Trim the storage of this list to its size, and drop the index.
+     */
+    void trimToSize() {
+        this.index = null;
+        if (this.size < this.sections.length)
+            this.sections = this.size == 0 ? EMPTY : Arrays.copyOf(this.sections, this.size);
+    }
+
+    /**
+     * Make sure the given index is within bounds.
+     *
+     * @param index Index to check.
+     * @param bound Exclusive upper bound.
+     */
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound)
+            throw new IndexOutOfBoundsException("Index: " + index);
+    }
+}
@@ -0,0 +1,146 @@
+package com.timvisee.yamlwrapper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the sections holding a value in a configuration section tree, in depth first order.
+ * The spliterator covers a range of sibling sections, and splits by handing off half of that range. A range of a
+ * single section holding other sections is replaced by the child sections of it, so wide sections deeper in the tree
+ * are split evenly as well. The list element sections of a value are traversed right after it.
+ */
+final class SectionSpliterator implements Spliterator<ConfigurationSection> {
+
+    /**
+     * Sibling sections this spliterator covers a range of.
+     */
+    private SectionList siblings;
+
+    /**
+     * Index of the next sibling section to traverse.
+     */
+    private int index;
+
+    /**
+     * Exclusive end index of the sibling sections to traverse.
+     */
+    private int fence;
+
+    /**
+     * Stack of sections that are pending within the sibling section currently being traversed.
+     */
+    private Deque<ConfigurationSection> pending;
+
+    /**
+     * Constructor.
+     *
+     * @param section Section to traverse the value sections of.
+     */
+    SectionSpliterator(ConfigurationSection section) {
+        // Traverse the section itself if it isn't holding any sections, unless it's an empty root
+        final SectionList children = section.getChildren();
+        if (children == null || children.isEmpty()) {
+            this.pending = new ArrayDeque<>();
+            if (!section.isRoot() || section.get("") != null)
+                this.pending.push(section);
+            return;
+        }
+
+        // Cover the range of all child sections
+        this.siblings = children;
+        this.fence = children.size();
+        descend();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param siblings Sibling sections to cover a range of.
+     * @param index    Index of the first sibling section.
+     * @param fence    Exclusive end index of the sibling sections.
+     * @param pending  Stack of pending sections to traverse first, or null.
+     */
+    private SectionSpliterator(SectionList siblings, int index, int fence, Deque<ConfigurationSection> pending) {
+        this.siblings = siblings;
+        this.index = index;
+        this.fence = fence;
+        this.pending = pending;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ConfigurationSection> action) {
+        while (true) {
+            // Take the next pending section, or the next sibling section
+            final ConfigurationSection section;
+            if (this.pending != null && !this.pending.isEmpty())
+                section = this.pending.pop();
+            else if (this.index < this.fence)
+                section = this.siblings.get(this.index++);
+            else
+                return false;
+
+            // Accept sections holding a value, and push their list element sections in reverse order
+            final SectionList children = section.getChildren();
+            if (children == null || children.isEmpty()) {
+                final List<ConfigurationSection> elements = ConfigurationSection.getElements(section.getRawValue());
+                if (!elements.isEmpty() && this.pending == null)
+                    this.pending = new ArrayDeque<>();
+                for (int i = elements.size() - 1; i >= 0; i--)
+                    this.pending.push(elements.get(i));
+                action.accept(section);
+                return true;
+            }
+
+            // Push the child sections of other sections in reverse order
+            if (this.pending == null)
+                this.pending = new ArrayDeque<>();
+            for (int i = children.size() - 1; i >= 0; i--)
+                this.pending.push(children.get(i));
+        }
+    }
+
+    @Override
+    public Spliterator<ConfigurationSection> trySplit() {
+        // Descend into a single remaining section if nothing is pending
+        if (this.pending == null || this.pending.isEmpty())
+            descend();
+
+        // Make sure there are enough sibling sections left to split
+        if (this.fence - this.index < 2)
+            return null;
+
+        // Hand off the pending sections and the first half of the range
+        final int mid = (this.index + this.fence) >>> 1;
+        final SectionSpliterator prefix = new SectionSpliterator(this.siblings, this.index, mid, this.pending);
+        this.index = mid;
+        this.pending = null;
+        return prefix;
+    }
+
+    /**
+     * Replace a range of a single section holding other sections with the range of its child sections.
+     */
+    private void descend() {
+        while (this.fence - this.index == 1) {
+            final SectionList children = this.siblings.get(this.index).getChildren();
+            if (children == null || children.isEmpty())
+                return;
+            this.siblings = children;
+            this.index = 0;
+            this.fence = children.size();
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return (this.fence - this.index) + (this.pending != null ? this.pending.size() : 0);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -0,0 +1,83 @@
+package com.timvisee.yamlwrapper;
+
+/**
+ * String value that references a range of the source it was loaded from, instead of holding its own characters.
+ * The string is only created when the value is read, see {@link YamlConfiguration#setLazyStrings(boolean)}.
+ * <p>
+ * Slices are immutable, but don't compare equal to strings. Sections replace a slice with its string once the value is
+ * read, unless their configuration is frozen, and values are exported as strings.
+ */
+final class SourceSlice implements CharSequence {
+
+    /**
+     * Source the value was loaded from, which is shared by all slices of it.
+     */
+    private final String source;
+
+    /**
+     * Index of the first character of the value in the source.
+     */
+    private final int offset;
+
+    /**
+     * Number of characters of the value.
+     */
+    private final int length;
+
+    /**
+     * Constructor.
+     *
+     * @param source Source the value was loaded from.
+     * @param offset Index of the first character of the value in the source.
+     * @param length Number of characters of the value.
+     */
+    SourceSlice(String source, int offset, int length) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Create a slice for the given value, if the given range of the source holds exactly that value.
+     *
+     * @param source Source the value was loaded from.
+     * @param offset Index of the first character of the range in the source.
+     * @param end    Index after the last character of the range in the source.
+     * @param value  Value that was loaded from the range.
+     * @return The slice, or null if the range doesn't hold the value as is.
+     */
+    static SourceSlice of(String source, int offset, int end, String value) {
+        final int length = end - offset;
+        if (offset < 0 || end > source.length() || length != value.length()
+            || !source.regionMatches(offset, value, 0, length))
+            return null;
+        return new SourceSlice(source, offset, length);
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= this.length)
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for length " + this.length);
+        return this.source.charAt(this.offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Create the string of this value, which is a new string on each call.
+     *
+     * @return The string value.
+     */
+    @Override
+    public String toString() {
+        return this.source.substring(this.offset, this.offset + this.length);
+    }
+}
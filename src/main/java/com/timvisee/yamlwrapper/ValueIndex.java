@@ -0,0 +1,108 @@
+package com.timvisee.yamlwrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Secondary index mapping the values of the sections matching a path pattern to those sections.
+ * See {@link Configuration#addValueIndex(String)}.
+ * Only scalar values are indexed, sections holding lists, maps or other sections are skipped.
+ */
+final class ValueIndex {
+
+    /**
+     * Query the indexed sections match.
+     */
+    private final PathQuery query;
+
+    /**
+     * Indexed sections by value, in the order they were indexed.
+     * Sections don't override {@link Object#equals(Object)}, so the sets hold them by identity.
+     */
+    private final Map<Object, Set<ConfigurationSection>> sections = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param query Query the indexed sections match.
+     */
+    ValueIndex(PathQuery query) {
+        this.query = query;
+    }
+
+    /**
+     * Get the query the indexed sections match.
+     *
+     * @return The query.
+     */
+    PathQuery getQuery() {
+        return this.query;
+    }
+
+    /**
+     * Add the given section with the given value to the index, if its path matches.
+     *
+     * @param section The section.
+     * @param value   Raw value of the section.
+     */
+    void add(ConfigurationSection section, Object value) {
+        // Make sure the value can be indexed, and the section matches
+        if (!isIndexable(value) || !this.query.matches(section.getPath()))
+            return;
+
+        // Index lazily loaded strings by their string
+        if (value instanceof SourceSlice)
+            value = value.toString();
+
+        // Add the section, unless it's indexed already
+        this.sections.computeIfAbsent(value, v -> new LinkedHashSet<>(2)).add(section);
+    }
+
+    /**
+     * Remove the given section with the given value from the index.
+     *
+     * @param section The section.
+     * @param value   Raw value the section was indexed with.
+     */
+    void remove(ConfigurationSection section, Object value) {
+        // Make sure the value could have been indexed
+        if (!isIndexable(value))
+            return;
+        if (value instanceof SourceSlice)
+            value = value.toString();
+
+        // Remove the section
+        final Set<ConfigurationSection> indexed = this.sections.get(value);
+        if (indexed == null || !indexed.remove(section))
+            return;
+        if (indexed.isEmpty())
+            this.sections.remove(value);
+    }
+
+    /**
+     * Find the indexed sections with the given value.
+     *
+     * @param value Value to find.
+     * @return Sections with the given value, in the order they were indexed.
+     */
+    List<ConfigurationSection> find(Object value) {
+        final Set<ConfigurationSection> indexed = value != null ? this.sections.get(value) : null;
+        return indexed != null ? new ArrayList<>(indexed) : Collections.emptyList();
+    }
+
+    /**
+     * Check whether the given raw value can be indexed.
+     *
+     * @param value Raw value.
+     * @return True if the value is a scalar, false if not.
+     */
+    private static boolean isIndexable(Object value) {
+        return value != null && !(value instanceof Collection) && !(value instanceof Map);
+    }
+}
@@ -6,20 +6,35 @@ import org.yaml.snakeyaml.constructor.Constructor;
 import org.yaml.snakeyaml.error.YAMLException;
 import org.yaml.snakeyaml.representer.Representer;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class YamlConfiguration extends FileConfiguration {
 
     /**
-     * Indentation size for YAML configurations that are saved.
+     * Default indentation size for YAML configurations that are saved.
      */
     private static final int YAML_INDENT_SIZE = 4;
 
     /**
-     * YAML flow style.
+     * Default YAML flow style.
      */
     private static final DumperOptions.FlowStyle YAML_FLOW_STYLE = DumperOptions.FlowStyle.BLOCK;
 
@@ -33,10 +48,26 @@ public class YamlConfiguration extends FileConfiguration {
      */
     private Representer representer = new Representer();
 
+    /**
+     * Whether configurations are loaded in safe mode.
+     */
+    private boolean safeMode = false;
+
+    /**
+     * Whether string values are loaded lazily from the source string.
+     */
+    private boolean lazyStrings = false;
+
     /**
      * YAML instance, holding the configuration.
+     * Created when it's first used, as most configurations that are streamed are never saved.
      */
-    private Yaml yaml = new Yaml(new Constructor(), representer, options);
+    private Yaml yaml;
+
+    /**
+     * Serialized YAML of clean top-level sections by their key, or null if the output cache is disabled.
+     */
+    private Map<String, String> outputCache;
 
     /**
      * Constructor.
@@ -50,14 +81,259 @@ public class YamlConfiguration extends FileConfiguration {
         representer.setDefaultFlowStyle(YAML_FLOW_STYLE);
     }
 
+    /**
+     * Get the YAML instance, and create it if it doesn't exist yet.
+     *
+     * @return YAML instance.
+     */
+    private Yaml getYaml() {
+        if (this.yaml == null)
+            this.yaml = createYaml();
+        return this.yaml;
+    }
+
+    /**
+     * Create a new YAML instance with the options of this configuration.
+     *
+     * @return YAML instance.
+     */
+    private Yaml createYaml() {
+        return new Yaml(new Constructor(), this.representer, this.options);
+    }
+
+    /**
+     * Get a YAML instance to save this configuration with.
+     * YAML instances aren't thread-safe, so frozen configurations, which may be saved by multiple threads at once,
+     * get a new instance each time.
+     *
+     * @return YAML instance.
+     */
+    private Yaml getDumper() {
+        if (!isFrozen())
+            return getYaml();
+        final Representer representer = new Representer();
+        representer.setDefaultFlowStyle(getFlowStyle());
+        return new Yaml(new Constructor(), representer, this.options);
+    }
+
+    /**
+     * Create a deep copy of this YAML configuration, without parsing it again.
+     *
+     * @return Copy of this configuration.
+     */
+    @Override
+    public YamlConfiguration copy() {
+        return copyInto(new YamlConfiguration());
+    }
+
+    @Override
+    <T extends Configuration> T copySettingsInto(T target) {
+        super.copySettingsInto(target);
+        if (target instanceof YamlConfiguration) {
+            final YamlConfiguration copy = (YamlConfiguration) target;
+            copy.setSafeMode(this.safeMode);
+            copy.setLazyStrings(this.lazyStrings);
+            copy.setIndent(getIndent());
+            copy.setFlowStyle(getFlowStyle());
+            copy.setOutputCacheEnabled(isOutputCacheEnabled());
+        }
+        return target;
+    }
+
+    /**
+     * Check whether configurations are loaded in safe mode.
+     *
+     * @return True if safe mode is enabled, false if not.
+     */
+    public boolean isSafeMode() {
+        return this.safeMode;
+    }
+
+    /**
+     * Enable or disable safe mode for loading configurations.
+     * In safe mode, configurations are built directly from the events of the YAML parser with a minimal constructor,
+     * which only supports maps, lists and the standard scalar types. Tags for arbitrary Java classes are rejected, so
+     * no arbitrary objects can be instantiated by a configuration file. This is also faster, as no node graph is
+     * composed, and common scalars are resolved without regular expressions.
+     *
+     * @param safeMode True to enable safe mode, false to disable it.
+     */
+    public void setSafeMode(boolean safeMode) {
+        this.safeMode = safeMode;
+    }
+
+    /**
+     * Check whether string values are loaded lazily from the source string.
+     *
+     * @return True if lazy strings are enabled, false if not.
+     */
+    public boolean isLazyStrings() {
+        return this.lazyStrings;
+    }
+
+    /**
+     * Enable or disable lazy strings for loading configurations from a string or file.
+     * With lazy strings, string values that are written as is in the source, without escapes or line folding, only
+     * reference their range of the source string, which is retained while such values exist. The string of a value is
+     * created when it's first read, so values that are never read don't hold a string of their own. Frozen
+     * configurations don't keep the strings they create, so each read of such a value creates it again. This uses the
+     * same event based loading as {@link #setSafeMode(boolean)}, so custom tags aren't supported either.
+     * <p>
+     * Note that the YAML parser still reads each scalar into a temporary string, this mainly reduces the memory held by
+     * large configurations of which few values are read.
+     *
+     * @param lazyStrings True to enable lazy strings, false to disable them.
+     */
+    public void setLazyStrings(boolean lazyStrings) {
+        this.lazyStrings = lazyStrings;
+    }
+
+    /**
+     * Get the indentation size used for saving configurations.
+     *
+     * @return Indentation size.
+     */
+    public int getIndent() {
+        return this.options.getIndent();
+    }
+
+    /**
+     * Set the indentation size used for saving configurations.
+     *
+     * @param indent Indentation size, from 1 to 10.
+     * @throws YAMLException Throws if the indentation size is out of range.
+     */
+    public void setIndent(int indent) {
+        this.options.setIndent(indent);
+        formatChanged();
+    }
+
+    /**
+     * Get the flow style used for saving configurations.
+     *
+     * @return Flow style.
+     */
+    public DumperOptions.FlowStyle getFlowStyle() {
+        return this.options.getDefaultFlowStyle();
+    }
+
+    /**
+     * Set the flow style used for saving configurations.
+     *
+     * @param flowStyle Flow style.
+     */
+    public void setFlowStyle(DumperOptions.FlowStyle flowStyle) {
+        this.options.setDefaultFlowStyle(flowStyle);
+        this.representer.setDefaultFlowStyle(flowStyle);
+        formatChanged();
+    }
+
+    /**
+     * Called when the output format is changed, so the YAML instance is recreated and cached output is discarded.
+     */
+    private void formatChanged() {
+        this.yaml = null;
+        if (this.outputCache != null)
+            this.outputCache.clear();
+    }
+
+    /**
+     * Check whether the serialized YAML of top-level sections is cached between saves.
+     *
+     * @return True if the output cache is enabled, false if not.
+     */
+    public boolean isOutputCacheEnabled() {
+        return this.outputCache != null;
+    }
+
+    /**
+     * Enable or disable caching the serialized YAML of top-level sections between saves.
+     * When enabled, modifications mark the top-level section they're made in as dirty, and saving only serializes
+     * dirty top-level sections again. The output of the other sections is reused, which makes saving after small edits
+     * to large configurations much cheaper. Changing the indentation or flow style discards the cached output.
+     * <p>
+     * The cache is only used with the block flow style, in which the top-level sections are serialized independently.
+     * Note that values that are modified in place, such as lists that are changed without setting them again, aren't
+     * detected.
+     *
+     * @param enabled True to enable the output cache, false to disable it.
+     */
+    public void setOutputCacheEnabled(boolean enabled) {
+        if (enabled && this.outputCache == null)
+            this.outputCache = new HashMap<>();
+        else if (!enabled)
+            this.outputCache = null;
+    }
+
+    @Override
+    void onNodeAdded(ConfigurationSection section) {
+        super.onNodeAdded(section);
+        markDirty(section);
+    }
+
+    @Override
+    void onNodeRemoved(ConfigurationSection section) {
+        super.onNodeRemoved(section);
+        markDirty(section);
+    }
+
+    @Override
+    void onValueChanged(ConfigurationSection section, Object previous, Object value) {
+        super.onValueChanged(section, previous, value);
+        markDirty(section);
+    }
+
+    /**
+     * Discard the cached output of the top-level section the given section is part of.
+     *
+     * @param section The modified section.
+     */
+    private void markDirty(ConfigurationSection section) {
+        // Make sure the output cache is enabled and holds anything
+        if (this.outputCache == null || this.outputCache.isEmpty())
+            return;
+
+        // Find the top-level section, everything is dirty if the root itself is modified
+        ConfigurationSection top = section;
+        while (top.getParent() != null && top.getParent() != this)
+            top = top.getParent();
+        if (top == this)
+            this.outputCache.clear();
+        else
+            this.outputCache.remove(top.getKey());
+    }
+
     /**
      * Save the YAML configuration to a string.
+     * If the output cache is enabled, only top-level sections that were modified since the last save are serialized.
+     * Frozen configurations only read the output cache, so they can be saved by multiple threads at once.
      *
      * @return String holding the YAML configuration.
      */
     public String saveToString() {
-        // Return the configuration string
-        return yaml.dump(getValues());
+        // Serialize the whole configuration, unless the top-level sections can be serialized independently
+        final SectionList sections = getChildren();
+        if (this.outputCache == null || getFlowStyle() != DumperOptions.FlowStyle.BLOCK || sections == null
+            || sections.size() == 0)
+            return getDumper().dump(getValues());
+
+        // Serialize each top-level section, reusing the output of clean sections
+        final Yaml yaml = getDumper();
+        final boolean frozen = isFrozen();
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < sections.size(); i++) {
+            final ConfigurationSection section = sections.get(i);
+            String output = this.outputCache.get(section.getKey());
+            if (output == null) {
+                final Object value = section.isHoldingConfigurationSections() ? section.getValues()
+                    : exportValue(section.get(""));
+                output = yaml.dump(Collections.singletonMap(section.getKey(), value));
+                if (!frozen)
+                    this.outputCache.put(section.getKey(), output);
+            }
+            builder.append(output);
+        }
+        return builder.toString();
     }
 
     /**
@@ -74,15 +350,220 @@ public class YamlConfiguration extends FileConfiguration {
         // Create a map to store the configuration in
         Map<?, ?> input = null;
         try {
-            input = (Map<?, ?>) yaml.load(config);
+            if (this.safeMode || this.lazyStrings)
+                input = new YamlEventLoader(config, null, this.lazyStrings).load();
+            else
+                input = (Map<?, ?>) getYaml().load(config);
 
         } catch (YAMLException | ClassCastException e) {
             e.printStackTrace();
         }
 
-        // Convert sub-maps to sub-sections
+        // Load the values
+        if (input != null)
+            loadDocument(input);
+    }
+
+    /**
+     * Load the configuration from the given reader.
+     * The YAML is parsed while it's read, without reading it into a string first, unless lazy strings are enabled as
+     * those reference the source string. The reader is not closed.
+     * The configuration is left unchanged if the YAML is invalid.
+     *
+     * @param reader Reader to load the configuration from.
+     * @throws IOException Throws if failed to load the configuration from the given reader.
+     */
+    @Override
+    public void load(Reader reader) throws IOException {
+        // Make sure the reader is not null, lazy strings need the whole source as a string
+        if (reader == null)
+            return;
+        if (this.lazyStrings) {
+            super.load(reader);
+            return;
+        }
+
+        // Parse the configuration from the reader
+        Map<?, ?> input = null;
+        try {
+            input = parse(reader);
+        } catch (YAMLException e) {
+            e.printStackTrace();
+        }
+
+        // Load the values
+        if (input != null)
+            loadDocument(input);
+    }
+
+    /**
+     * Load the configuration from the given file, failing if the YAML in it is invalid.
+     * Unlike {@link #load(Path)}, which leaves the configuration unchanged if the YAML is invalid, this throws so the
+     * caller can tell an invalid file apart from an empty one.
+     *
+     * @param path Path of the file to load the configuration from.
+     * @throws IOException Throws if failed to read the file, or if the YAML in it is invalid.
+     */
+    void loadStrictly(Path path) throws IOException {
+        // Parse the configuration from the file
+        final Map<?, ?> input;
+        try (Reader reader = openReader(path)) {
+            input = parse(reader);
+        } catch (YAMLException e) {
+            throw new IOException("Failed to load YAML configuration from " + path, e);
+        }
+
+        // Load the values
+        if (input != null)
+            loadDocument(input);
+    }
+
+    /**
+     * Parse the first document from the given reader, in safe mode if it's enabled.
+     *
+     * @param reader Reader to parse the document from.
+     * @return Values of the document, or null if there is no document.
+     * @throws IOException   Throws if failed to read from the reader.
+     * @throws YAMLException Throws if the YAML is invalid, or if the document isn't a map.
+     */
+    private Map<?, ?> parse(Reader reader) throws IOException {
+        try {
+            if (this.safeMode)
+                return new YamlEventLoader(reader, null).load();
+            final Object input = getYaml().load(reader);
+            if (input != null && !(input instanceof Map))
+                throw new YAMLException("Document is not a map of keys and values");
+            return (Map<?, ?>) input;
+        } catch (YAMLException e) {
+            // Failures to read are thrown as they are
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Load only the given paths of a YAML configuration from the given file.
+     * The file is read through the events of the YAML parser, and subtrees that aren't included are skipped without
+     * constructing any values or sections for them. This makes loading time and memory scale with the included parts of
+     * large files. Only the first document of the file is loaded. Files compressed with gzip are decompressed while
+     * they're read.
+     * <p>
+     * Each include path is a path pattern as described in {@link PathQuery}, of which all matching sections are loaded
+     * with all their sub-sections. For example, {@code database} and {@code tenants.*.limits} load those sections only.
+     * Values are constructed like the safe constructor of SnakeYAML does, custom tags aren't supported.
+     *
+     * @param path         Path of the file to load the configuration from.
+     * @param includePaths Path patterns of the sections to load, or null to load everything.
+     * @throws IOException Throws if failed to read the file, or if the YAML in it is invalid.
+     */
+    public void load(Path path, Set<String> includePaths) throws IOException {
+        // Build the included values from the events of the file
+        final Map<String, Object> input;
+        try (Reader reader = openReader(path)) {
+            input = new YamlEventLoader(reader, includePaths).load();
+        } catch (YAMLException e) {
+            throw new IOException("Failed to load YAML configuration from " + path, e);
+        }
+
+        // Load the values
         if (input != null)
-            convertMapsToSections(input, this);
+            loadDocument(input);
+    }
+
+    /**
+     * Open a reader for the given file, which is decompressed while it's read if it's compressed with gzip.
+     *
+     * @param path Path of the file.
+     * @return Buffered UTF-8 reader of the file.
+     * @throws IOException Throws if failed to open the file, or if it's compressed in an unsupported format.
+     */
+    private static Reader openReader(Path path) throws IOException {
+        return new BufferedReader(new InputStreamReader(decompress(Files.newInputStream(path)), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stream the documents of a multi-document YAML file, separated by {@code ---}.
+     * Files are decoded as UTF-8, and files compressed with gzip are decompressed while they're streamed. See
+     * {@link #streamDocuments(Reader)}.
+     *
+     * @param path Path of the file to stream the documents of.
+     * @return Lazy stream of configurations, one for each document. The stream must be closed to close the file.
+     * @throws IOException Throws if failed to open the file.
+     */
+    public Stream<YamlConfiguration> streamDocuments(Path path) throws IOException {
+        return streamDocuments(openReader(path));
+    }
+
+    /**
+     * Stream the documents of a multi-document YAML stream, separated by {@code ---}.
+     * Documents are parsed lazily while the stream is consumed, so only a single document is held in memory at a time.
+     * They're parsed like {@link #load(Reader)} does, in safe mode if it's enabled for this configuration, and each
+     * configuration gets the settings of this configuration. Lazy strings aren't used, as there is no source string.
+     * Documents that aren't a map of keys and values, such as empty documents, result in an empty configuration.
+     * <p>
+     * The reader is closed when the stream is closed. Errors in the YAML stream are thrown as {@link YAMLException}
+     * when the document holding them is reached.
+     *
+     * @param reader Reader to stream the documents from.
+     * @return Lazy stream of configurations, one for each document.
+     */
+    public Stream<YamlConfiguration> streamDocuments(Reader reader) {
+        // Parse the documents lazily with a separate parser, the stream may be consumed on another thread
+        final Iterator<Map<?, ?>> documents;
+        if (this.safeMode || this.lazyStrings)
+            documents = new YamlEventLoader(reader, null).documents();
+        else
+            documents = documents(createYaml().loadAll(reader).iterator());
+
+        // Create a configuration with the settings of this configuration for each document
+        final YamlConfiguration settings = copySettingsInto(new YamlConfiguration());
+        final Iterator<YamlConfiguration> configurations = new Iterator<YamlConfiguration>() {
+            @Override
+            public boolean hasNext() {
+                return documents.hasNext();
+            }
+
+            @Override
+            public YamlConfiguration next() {
+                final Map<?, ?> document = documents.next();
+                final YamlConfiguration config = settings.copySettingsInto(new YamlConfiguration());
+                if (document != null)
+                    config.loadDocument(document);
+                return config;
+            }
+        };
+
+        // Create the stream, and close the reader along with it
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(configurations, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * Get an iterator over the maps of the given loaded documents.
+     *
+     * @param documents Iterator over the loaded documents.
+     * @return Iterator over the documents, which are null for documents that aren't a map.
+     */
+    private static Iterator<Map<?, ?>> documents(Iterator<Object> documents) {
+        return new Iterator<Map<?, ?>>() {
+            @Override
+            public boolean hasNext() {
+                return documents.hasNext();
+            }
+
+            @Override
+            public Map<?, ?> next() {
+                final Object document = documents.next();
+                return document instanceof Map ? (Map<?, ?>) document : null;
+            }
+        };
     }
 
     /**
@@ -130,6 +611,19 @@ public class YamlConfiguration extends FileConfiguration {
         return config;
     }
 
+    /**
+     * Load a shared YAML configuration from the given file, through the global {@link ConfigurationCache}.
+     * The file is only parsed again if it has been modified since it was last loaded.
+     * The returned configuration is frozen, use {@link #copy()} to get a modifiable configuration.
+     *
+     * @param path Path of the file to load the configuration from.
+     * @return Frozen YAML configuration.
+     * @throws IOException Throws if failed to load the configuration file, or if the YAML in it is invalid.
+     */
+    public static YamlConfiguration loadShared(Path path) throws IOException {
+        return ConfigurationCache.global().load(path);
+    }
+
     /**
      * Load a YAML configuration from the given input stream.
      * An empty configuration object is returned if the input stream is invalid.
@@ -155,28 +649,4 @@ public class YamlConfiguration extends FileConfiguration {
         // Return the configuration
         return config;
     }
-
-    /**
-     * Convert a map to a configuration section.
-     * The parser creates a map holding the configuration.
-     * Since we're not working with maps directly, this method can be used to convert these maps to proper configuration sections.
-     * Sub-maps are automatically converted to sub-sections.
-     *
-     * @param input   Input map, that should be converted.
-     * @param section Base configuration section.
-     */
-    private void convertMapsToSections(Map<?, ?> input, ConfigurationSection section) {
-        // Loop through the map entries to convert it
-        for (Map.Entry<?, ?> entry : input.entrySet()) {
-            // Get the key and value
-            final String key = entry.getKey().toString();
-            final Object value = entry.getValue();
-
-            // Set the value
-            if (value instanceof Map)
-                convertMapsToSections((Map<?, ?>) value, section.createSection(key));
-            else
-                section.set(key, value);
-        }
-    }
 }
@@ -0,0 +1,538 @@
+package com.timvisee.yamlwrapper;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Loader building the values of a YAML document directly from the events of the SnakeYAML parser.
+ * No node graph is composed, and subtrees that aren't included are skipped without constructing anything for them.
+ * Values are constructed like the safe constructor of SnakeYAML does, so no arbitrary Java objects are created.
+ */
+final class YamlEventLoader {
+
+    /**
+     * Parser providing the events of the YAML stream.
+     */
+    private final Parser events;
+
+    /**
+     * Constructor for scalar values.
+     */
+    private final ScalarConstructor constructor = new ScalarConstructor();
+
+    /**
+     * Queries of the paths to include, or null to include everything.
+     */
+    private final PathQuery[] includes;
+
+    /**
+     * Constructed values by their anchor.
+     */
+    private final Map<String, Object> anchors = new HashMap<>();
+
+    /**
+     * Source of the YAML stream that string values reference as {@link SourceSlice}, or null to load strings as is.
+     */
+    private final String source;
+
+    /**
+     * Constructor.
+     *
+     * @param reader   Reader to load the YAML stream from.
+     * @param includes Path patterns of the sections to include with all their sub-sections, or null to include
+     *                 everything.
+     */
+    YamlEventLoader(Reader reader, Iterable<String> includes) {
+        this(reader, includes, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param source      Source of the YAML stream.
+     * @param includes    Path patterns of the sections to include with all their sub-sections, or null to include
+     *                    everything.
+     * @param lazyStrings True to load string values of map entries as slices of the source, which are only turned into
+     *                    strings when they're read.
+     */
+    YamlEventLoader(String source, Iterable<String> includes, boolean lazyStrings) {
+        this(new StringReader(source), includes, lazyStrings ? source : null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param reader   Reader to load the YAML stream from.
+     * @param includes Path patterns of the sections to include with all their sub-sections, or null to include
+     *                 everything.
+     * @param source   Source of the YAML stream to slice string values from, or null to load strings as is.
+     */
+    private YamlEventLoader(Reader reader, Iterable<String> includes, String source) {
+        this.events = new ParserImpl(new StreamReader(reader));
+        this.source = source;
+
+        // Compile the include patterns
+        if (includes != null) {
+            final List<PathQuery> queries = new ArrayList<>();
+            for (String include : includes)
+                queries.add(PathQuery.compile(include));
+            this.includes = queries.toArray(new PathQuery[0]);
+        } else
+            this.includes = null;
+    }
+
+    /**
+     * Load the first document of the YAML stream, or the next one if documents were loaded before.
+     *
+     * @return Values of the document, or null if the stream has no document, or the document isn't a map.
+     * @throws YAMLException Throws if the YAML stream is invalid.
+     */
+    Map<String, Object> load() {
+        // Anchors don't carry over between documents
+        this.anchors.clear();
+
+        // Find the first node of the next document
+        while (true) {
+            final Event event = this.events.getEvent();
+            if (event.is(Event.ID.StreamEnd))
+                return null;
+            if (!(event instanceof NodeEvent))
+                continue;
+
+            // Build the root map, everything is included if there are no include patterns
+            if (!event.is(Event.ID.MappingStart) || hasTag(event, Tag.SET)) {
+                skip(event);
+                return null;
+            }
+            checkTag((CollectionStartEvent) event);
+            if (this.includes == null)
+                return buildMap(event);
+            final long[] states = new long[this.includes.length];
+            for (int i = 0; i < states.length; i++)
+                states[i] = this.includes[i].start();
+            return included(states) ? buildMap(event) : buildPartialMap(event, states);
+        }
+    }
+
+    /**
+     * Get an iterator loading the documents of the YAML stream one by one, see {@link #load()}.
+     *
+     * @return Iterator over the documents, which are null for documents that aren't a map.
+     * @throws YAMLException Throws from the iterator if the YAML stream is invalid.
+     */
+    Iterator<Map<?, ?>> documents() {
+        return new Iterator<Map<?, ?>>() {
+            @Override
+            public boolean hasNext() {
+                // Skip the end of the previous document, up to the start of the next one
+                while (!YamlEventLoader.this.events.checkEvent(Event.ID.DocumentStart)) {
+                    if (YamlEventLoader.this.events.checkEvent(Event.ID.StreamEnd))
+                        return false;
+                    YamlEventLoader.this.events.getEvent();
+                }
+                return true;
+            }
+
+            @Override
+            public Map<?, ?> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return load();
+            }
+        };
+    }
+
+    /**
+     * Check whether any of the given match states include the whole subtree.
+     *
+     * @param states Match states for each include query.
+     * @return True if the subtree is included.
+     */
+    private boolean included(long[] states) {
+        for (int i = 0; i < states.length; i++)
+            if (this.includes[i].accepts(states[i]))
+                return true;
+        return false;
+    }
+
+    /**
+     * Build a map of which only the entries matching the include patterns are constructed.
+     *
+     * @param start  Mapping start event.
+     * @param states Match states for each include query at the map.
+     * @return The map holding the included entries.
+     */
+    private Map<String, Object> buildPartialMap(Event start, long[] states) {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        List<Map<String, Object>> merges = null;
+        while (true) {
+            // Read the key, or the end of the map
+            final Event keyEvent = this.events.getEvent();
+            if (keyEvent.is(Event.ID.MappingEnd))
+                return merge(map, merges, states);
+
+            // Collect the maps to merge for merge keys
+            if (isMergeKey(keyEvent)) {
+                if (merges == null)
+                    merges = new ArrayList<>();
+                collectMerges(build(this.events.getEvent()), merges);
+                continue;
+            }
+            final String key = String.valueOf(build(keyEvent));
+
+            // Advance the match states with the key
+            final long[] next = new long[states.length];
+            boolean candidate = false;
+            for (int i = 0; i < states.length; i++) {
+                next[i] = this.includes[i].next(states[i], key);
+                candidate |= next[i] != 0;
+            }
+
+            // Build included values, descend into maps that may contain included values, and skip the rest
+            // Anchored maps are built completely and filtered afterwards, as aliases to them may be included
+            final Event valueEvent = this.events.getEvent();
+            if (included(next))
+                map.put(key, slice(build(valueEvent), valueEvent));
+            else if (candidate && valueEvent.is(Event.ID.MappingStart) && ((NodeEvent) valueEvent).getAnchor() == null
+                && !hasTag(valueEvent, Tag.SET)) {
+                final Map<String, Object> child = buildPartialMap(valueEvent, next);
+                if (!child.isEmpty())
+                    map.put(key, child);
+            } else if (candidate) {
+                final Object child = filter(key, build(valueEvent), states);
+                if (child != null)
+                    map.put(key, child);
+            } else
+                skip(valueEvent);
+        }
+    }
+
+    /**
+     * Build the value of the node starting with the given event.
+     *
+     * @param start First event of the node.
+     * @return The value.
+     */
+    private Object build(Event start) {
+        // Resolve aliases to values built before
+        if (start instanceof AliasEvent) {
+            final String anchor = ((AliasEvent) start).getAnchor();
+            if (!this.anchors.containsKey(anchor))
+                throw new YAMLException("Found undefined alias " + anchor + " at " + start.getStartMark());
+            return this.anchors.get(anchor);
+        }
+
+        // Build scalars, sequences and maps
+        if (start instanceof ScalarEvent) {
+            final Object value = this.constructor.construct((ScalarEvent) start);
+            registerAnchor(start, value);
+            return value;
+        }
+        if (start instanceof CollectionStartEvent)
+            checkTag((CollectionStartEvent) start);
+        if (hasTag(start, Tag.OMAP) || hasTag(start, Tag.PAIRS))
+            return buildPairs(start);
+        if (hasTag(start, Tag.SET))
+            return buildSet(start);
+        if (start.is(Event.ID.SequenceStart)) {
+            final List<Object> list = new ArrayList<>();
+            registerAnchor(start, list);
+            Event event;
+            while (!(event = this.events.getEvent()).is(Event.ID.SequenceEnd))
+                list.add(build(event));
+            return list;
+        }
+        if (start.is(Event.ID.MappingStart))
+            return buildMap(start);
+        throw new YAMLException("Unexpected event " + start + " at " + start.getStartMark());
+    }
+
+    /**
+     * Build an ordered map or a list of pairs, like SnakeYAML does for the {@code !!omap} and {@code !!pairs} tags.
+     * Both are sequences of maps holding a single entry. An ordered map is built as a map, and pairs are built as a list
+     * of key and value arrays, as pairs may have duplicate keys.
+     *
+     * @param start Sequence start event.
+     * @return The map or list of pairs.
+     * @throws YAMLException Throws if the node isn't a sequence of single entry maps.
+     */
+    private Object buildPairs(Event start) {
+        // Make sure the node is a sequence
+        final boolean omap = hasTag(start, Tag.OMAP);
+        if (!start.is(Event.ID.SequenceStart))
+            throw new YAMLException("Expected a sequence for " + (omap ? "an ordered map" : "pairs") + " at "
+                + start.getStartMark());
+
+        // Build the entries of the single entry maps
+        final Map<String, Object> map = omap ? new LinkedHashMap<>() : null;
+        final List<Object[]> pairs = omap ? null : new ArrayList<>();
+        registerAnchor(start, omap ? map : pairs);
+        Event event;
+        while (!(event = this.events.getEvent()).is(Event.ID.SequenceEnd)) {
+            if (!event.is(Event.ID.MappingStart))
+                throw new YAMLException("Expected a mapping of length 1 at " + event.getStartMark());
+            final Object key = build(this.events.getEvent());
+            final Object value = build(this.events.getEvent());
+            if (!this.events.getEvent().is(Event.ID.MappingEnd))
+                throw new YAMLException("Expected a mapping of length 1 at " + event.getStartMark());
+            if (omap)
+                map.put(String.valueOf(key), value);
+            else
+                pairs.add(new Object[]{key, value});
+        }
+        return omap ? map : pairs;
+    }
+
+    /**
+     * Build a set, like SnakeYAML does for the {@code !!set} tag.
+     * The set holds the keys of the map, of which the values are ignored.
+     *
+     * @param start Mapping start event.
+     * @return The set.
+     * @throws YAMLException Throws if the node isn't a map.
+     */
+    private Set<Object> buildSet(Event start) {
+        // Make sure the node is a map
+        if (!start.is(Event.ID.MappingStart))
+            throw new YAMLException("Expected a mapping for a set at " + start.getStartMark());
+
+        // Collect the keys
+        final Set<Object> set = new LinkedHashSet<>();
+        registerAnchor(start, set);
+        Event event;
+        while (!(event = this.events.getEvent()).is(Event.ID.MappingEnd)) {
+            set.add(build(event));
+            build(this.events.getEvent());
+        }
+        return set;
+    }
+
+    /**
+     * Check whether the given event has the given explicit tag.
+     *
+     * @param event Node event.
+     * @param tag   The tag.
+     * @return True if the event has the tag.
+     */
+    private static boolean hasTag(Event event, Tag tag) {
+        return event instanceof CollectionStartEvent && !((CollectionStartEvent) event).getImplicit()
+            && tag.getValue().equals(((CollectionStartEvent) event).getTag());
+    }
+
+    /**
+     * Replace the given string value by a slice of the source it was read from, if lazy strings are enabled.
+     * Only plain and quoted scalars on which the source holds the value as is, without escapes or line folding, are
+     * sliced, other values are kept as they are.
+     *
+     * @param value Value built for the event.
+     * @param event First event of the value.
+     * @return The slice, or the given value.
+     */
+    private Object slice(Object value, Event event) {
+        // Make sure the value is a non-empty string of a scalar
+        if (this.source == null || !(value instanceof String) || ((String) value).isEmpty()
+            || !(event instanceof ScalarEvent))
+            return value;
+
+        // Find the range of the value without its quotes
+        final DumperOptions.ScalarStyle style = ((ScalarEvent) event).getScalarStyle();
+        final int inset;
+        if (style == DumperOptions.ScalarStyle.PLAIN)
+            inset = 0;
+        else if (style == DumperOptions.ScalarStyle.SINGLE_QUOTED || style == DumperOptions.ScalarStyle.DOUBLE_QUOTED)
+            inset = 1;
+        else
+            return value;
+
+        // Slice the source, if it holds the value as is
+        final SourceSlice slice = SourceSlice.of(this.source, event.getStartMark().getIndex() + inset,
+            event.getEndMark().getIndex() - inset, (String) value);
+        return slice != null ? slice : value;
+    }
+
+    /**
+     * Make sure the explicit tag of the given collection is a standard tag, no arbitrary objects are constructed.
+     *
+     * @param event Collection start event.
+     * @throws YAMLException Throws if the tag isn't supported.
+     */
+    private static void checkTag(CollectionStartEvent event) {
+        final String tag = event.getTag();
+        if (tag == null || tag.equals("!") || event.getImplicit())
+            return;
+        if (!tag.equals(Tag.MAP.getValue()) && !tag.equals(Tag.SEQ.getValue()) && !tag.equals(Tag.OMAP.getValue())
+            && !tag.equals(Tag.PAIRS.getValue()) && !tag.equals(Tag.SET.getValue()))
+            throw new YAMLException("Could not determine a constructor for the tag " + tag + " at " + event.getStartMark());
+    }
+
+    /**
+     * Build a map, including all its entries.
+     * Merge keys are handled like SnakeYAML does, merged entries come first and are overridden by explicit entries.
+     *
+     * @param start Mapping start event.
+     * @return The map.
+     */
+    private Map<String, Object> buildMap(Event start) {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        registerAnchor(start, map);
+        List<Map<String, Object>> merges = null;
+        Event event;
+        while (!(event = this.events.getEvent()).is(Event.ID.MappingEnd)) {
+            // Collect the maps to merge for merge keys
+            if (isMergeKey(event)) {
+                if (merges == null)
+                    merges = new ArrayList<>();
+                collectMerges(build(this.events.getEvent()), merges);
+                continue;
+            }
+
+            // Build the entry
+            final String key = String.valueOf(build(event));
+            final Event valueEvent = this.events.getEvent();
+            map.put(key, slice(build(valueEvent), valueEvent));
+        }
+        return merge(map, merges, null);
+    }
+
+    /**
+     * Check whether the given event is a merge key.
+     *
+     * @param event Key event.
+     * @return True if the event is a merge key, false if not.
+     */
+    private boolean isMergeKey(Event event) {
+        return event instanceof ScalarEvent && this.constructor.resolveTag((ScalarEvent) event).equals(Tag.MERGE);
+    }
+
+    /**
+     * Collect the maps to merge from the value of a merge key.
+     *
+     * @param value  Value of the merge key, a map or a list of maps.
+     * @param merges List to add the maps to.
+     */
+    @SuppressWarnings("unchecked")
+    private static void collectMerges(Object value, List<Map<String, Object>> merges) {
+        if (value instanceof Map)
+            merges.add((Map<String, Object>) value);
+        else if (value instanceof List)
+            for (Object element : (List<?>) value)
+                if (element instanceof Map)
+                    merges.add((Map<String, Object>) element);
+    }
+
+    /**
+     * Merge the given maps into the given map, like SnakeYAML does for merge keys.
+     * Merged entries come first, and are overridden by the entries of the map itself. Earlier maps to merge take
+     * precedence over later ones.
+     *
+     * @param map    Map holding the explicit entries, which is updated.
+     * @param merges Maps to merge, or null.
+     * @param states Match states for each include query at the map, or null if all entries are included.
+     * @return The given map.
+     */
+    private Map<String, Object> merge(Map<String, Object> map, List<Map<String, Object>> merges, long[] states) {
+        // Make sure there is anything to merge
+        if (merges == null)
+            return map;
+
+        // Merge the maps, only keeping included entries
+        final Map<String, Object> merged = new LinkedHashMap<>();
+        for (Map<String, Object> merge : merges) {
+            for (Map.Entry<String, Object> entry : merge.entrySet()) {
+                final Object value = states != null ? filter(entry.getKey(), entry.getValue(), states) : entry.getValue();
+                if (value != null)
+                    merged.putIfAbsent(entry.getKey(), value);
+            }
+        }
+        merged.putAll(map);
+        map.clear();
+        map.putAll(merged);
+        return map;
+    }
+
+    /**
+     * Filter an already built entry of a map by the include queries.
+     *
+     * @param key    Key of the entry.
+     * @param value  Value of the entry.
+     * @param states Match states for each include query at the map.
+     * @return The included value, or null if nothing of it is included.
+     */
+    @SuppressWarnings("unchecked")
+    private Object filter(String key, Object value, long[] states) {
+        // Advance the match states with the key
+        final long[] next = new long[states.length];
+        boolean candidate = false;
+        for (int i = 0; i < states.length; i++) {
+            next[i] = this.includes[i].next(states[i], key);
+            candidate |= next[i] != 0;
+        }
+
+        // Keep included values, and filter maps that may contain included values
+        if (included(next))
+            return value;
+        if (!candidate || !(value instanceof Map))
+            return null;
+        final Map<String, Object> filtered = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+            final Object child = filter(entry.getKey(), entry.getValue(), next);
+            if (child != null)
+                filtered.put(entry.getKey(), child);
+        }
+        return filtered.isEmpty() ? null : filtered;
+    }
+
+    /**
+     * Skip the node starting with the given event, without constructing anything for it.
+     * Anchored nodes are still built, as aliases to them may be included.
+     *
+     * @param start First event of the node.
+     */
+    private void skip(Event start) {
+        // Build anchored nodes, nothing has to be done for scalars and aliases
+        if (start instanceof NodeEvent && !(start instanceof AliasEvent) && ((NodeEvent) start).getAnchor() != null) {
+            build(start);
+            return;
+        }
+        if (!start.is(Event.ID.SequenceStart) && !start.is(Event.ID.MappingStart))
+            return;
+
+        // Skip the events of the collection
+        Event event;
+        while (!(event = this.events.getEvent()).is(Event.ID.SequenceEnd) && !event.is(Event.ID.MappingEnd))
+            skip(event);
+    }
+
+    /**
+     * Register the value built for the given event under its anchor, if it has one.
+     *
+     * @param event Node event.
+     * @param value Value built for it.
+     */
+    private void registerAnchor(Event event, Object value) {
+        final String anchor = ((NodeEvent) event).getAnchor();
+        if (anchor != null)
+            this.anchors.put(anchor, value);
+    }
+}
@@ -0,0 +1,103 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BinaryConfigurationTest {
+
+    @Test
+    public void roundTripYamlTypes() {
+        final YamlConfiguration yaml = new YamlConfiguration();
+        yaml.setSafeMode(true);
+        yaml.loadFromString("bytes: !!binary aGVsbG8=\n"
+            + "set: !!set {a, 1}\n"
+            + "pairs: !!pairs [x: 1, x: 2]\n"
+            + "string: text\n");
+
+        final BinaryConfiguration binary = new BinaryConfiguration();
+        binary.copyFrom(yaml);
+        final BinaryConfiguration loaded = new BinaryConfiguration();
+        loaded.loadFromString(binary.saveToString());
+
+        assertArrayEquals("hello".getBytes(), (byte[]) loaded.get("bytes"));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("a", 1)), loaded.get("set"));
+        final List<?> pairs = loaded.getList("pairs");
+        assertArrayEquals(new Object[]{"x", 1}, (Object[]) pairs.get(0));
+        assertArrayEquals(new Object[]{"x", 2}, (Object[]) pairs.get(1));
+        assertEquals("text", loaded.get("string"));
+    }
+
+    @Test
+    public void unsupportedType() {
+        final BinaryConfiguration binary = new BinaryConfiguration();
+        binary.set("decimal", new BigDecimal("1.5"));
+        try {
+            binary.save(new ByteArrayOutputStream());
+            fail("Expected a value that can't be stored to fail");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void roundTripLargeValues() throws IOException {
+        final byte[] bytes = new byte[100000];
+        new Random(1).nextBytes(bytes);
+        final List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 20000; i++)
+            list.add(i);
+        final StringBuilder string = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            string.append('\u00e9');
+
+        final BinaryConfiguration binary = new BinaryConfiguration();
+        binary.set("bytes", bytes);
+        binary.set("list", list);
+        binary.set("string", string.toString());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        binary.save(out);
+        final BinaryConfiguration loaded = new BinaryConfiguration();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertArrayEquals(bytes, (byte[]) loaded.get("bytes"));
+        assertEquals(list, loaded.get("list"));
+        assertEquals(string.toString(), loaded.get("string"));
+    }
+
+    @Test
+    public void rejectCorruptSizes() throws IOException {
+        // Tags of strings, lists, maps, sets, byte arrays and arrays
+        for (int tag : new int[]{6, 7, 8, 12, 13, 14}) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(0x59574201);
+            data.writeByte(8);
+            data.writeInt(1);
+            data.writeInt(1);
+            data.writeByte('a');
+            data.writeByte(tag);
+            data.writeInt(Integer.MAX_VALUE - 8);
+            data.writeByte(0);
+            try {
+                new BinaryConfiguration().load(new ByteArrayInputStream(out.toByteArray()));
+                fail("Expected the corrupt size of tag " + tag + " to be rejected");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+}
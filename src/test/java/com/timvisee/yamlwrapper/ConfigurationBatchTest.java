@@ -0,0 +1,177 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConfigurationBatchTest {
+
+    /**
+     * Apply the given changes to a configuration with list element sections, both as a batch and one by one, and
+     * compare the results.
+     *
+     * @param changes The changes.
+     * @return The configuration the batch was applied to.
+     */
+    private static YamlConfiguration compare(Consumer<ConfigurationBatch> changes) {
+        final YamlConfiguration batched = ConfigurationSectionTest.routes(false);
+        batched.batch(changes);
+
+        // Replay the same changes on a configuration directly
+        final YamlConfiguration unbatched = ConfigurationSectionTest.routes(false);
+        changes.accept(sequential(unbatched));
+
+        assertEquals(unbatched.saveToString(), batched.saveToString());
+        return batched;
+    }
+
+    /**
+     * Create a batch that applies each change to the given configuration directly, one by one.
+     *
+     * @param config Configuration to apply the changes to.
+     * @return The batch.
+     */
+    private static ConfigurationBatch sequential(Configuration config) {
+        return new ConfigurationBatch() {
+            @Override
+            public ConfigurationBatch set(String path, Object value) {
+                config.set(path, value);
+                return this;
+            }
+
+            @Override
+            public ConfigurationBatch createSection(String path) {
+                config.createSection(path);
+                return this;
+            }
+
+            @Override
+            public ConfigurationBatch remove(String path) {
+                config.remove(path);
+                return this;
+            }
+        };
+    }
+
+    /**
+     * Create a new value of the given kind, so values are never shared between configurations.
+     *
+     * @param kind Kind of the value.
+     * @return The value.
+     */
+    private static Object value(int kind) {
+        switch (kind) {
+            case 0:
+                return null;
+            case 1:
+                return 7;
+            case 2:
+                return "x";
+            case 3:
+                return new ArrayList<>(Arrays.asList(1, 2));
+            case 4:
+                final List<Object> routes = new ArrayList<>();
+                routes.add(new LinkedHashMap<>(Collections.singletonMap("host", "y")));
+                routes.add(new LinkedHashMap<>(Collections.singletonMap("port", 9)));
+                return routes;
+            default:
+                return new LinkedHashMap<>(Collections.singletonMap("k", 1));
+        }
+    }
+
+    @Test
+    public void randomBatchesMatchSequentialChanges() {
+        final String[] keys = {"routes", "routes[0]", "routes[1]", "routes[2]", "routes[4]", "host", "port", "a", "b"};
+        final YamlConfiguration base = ConfigurationSectionTest.routes(false);
+        final Random random = new Random(35);
+        for (int i = 0; i < 100000; i++) {
+            // Generate a random sequence of changes on paths of up to three keys
+            final int count = 1 + random.nextInt(6);
+            final int[] types = new int[count];
+            final String[] paths = new String[count];
+            final int[] kinds = new int[count];
+            for (int j = 0; j < count; j++) {
+                final StringBuilder path = new StringBuilder(keys[random.nextInt(keys.length)]);
+                for (int depth = random.nextInt(3); depth > 0; depth--)
+                    path.append('.').append(keys[random.nextInt(keys.length)]);
+                types[j] = random.nextInt(3);
+                paths[j] = path.toString();
+                kinds[j] = random.nextInt(6);
+            }
+            final Consumer<ConfigurationBatch> changes = batch -> {
+                for (int j = 0; j < count; j++) {
+                    if (types[j] == 0)
+                        batch.set(paths[j], value(kinds[j]));
+                    else if (types[j] == 1)
+                        batch.createSection(paths[j]);
+                    else
+                        batch.remove(paths[j]);
+                }
+            };
+
+            // Apply the changes as a batch and one by one, and compare the values in order
+            final YamlConfiguration batched = base.copy();
+            batched.batch(changes);
+            final YamlConfiguration unbatched = base.copy();
+            changes.accept(sequential(unbatched));
+            final StringBuilder description = new StringBuilder("Case " + i + ":");
+            for (int j = 0; j < count; j++)
+                description.append(' ').append(types[j]).append(' ').append(paths[j]).append(' ').append(kinds[j]).append(';');
+            assertEquals(description.toString(), unbatched.getValues().toString(), batched.getValues().toString());
+        }
+    }
+
+    @Test
+    public void setListElement() {
+        final YamlConfiguration config = compare(batch -> batch
+            .set("routes[1].host", "x")
+            .set("routes[1].tls", true)
+            .set("routes[2].port", 4));
+        assertEquals("x", config.get("routes[1].host"));
+        assertEquals(4, config.get("routes[2].port"));
+        assertNull(config.getSection("routes").findChild("routes[1]"));
+    }
+
+    @Test
+    public void createAndRemoveInListElement() {
+        compare(batch -> batch
+            .createSection("routes[0].options")
+            .set("routes[0].options.retry", 3)
+            .remove("routes[2].port"));
+    }
+
+    @Test
+    public void removeListElement() {
+        final YamlConfiguration config = compare(batch -> batch
+            .remove("routes[0]")
+            .set("routes[0].host", "x")
+            .remove("routes[1]"));
+        assertEquals(1, config.getList("routes").size());
+        assertEquals("x", config.get("routes[0].host"));
+    }
+
+    @Test
+    public void replaceListAndElements() {
+        compare(batch -> batch
+            .set("routes[0].host", "x")
+            .set("routes", Arrays.asList(Collections.singletonMap("host", "y")))
+            .set("routes[0].port", 5));
+        compare(batch -> batch
+            .set("routes", null)
+            .set("routes[0].host", "x"));
+    }
+
+    @Test
+    public void missingListElement() {
+        compare(batch -> batch.set("routes[5].host", "x"));
+    }
+}
@@ -0,0 +1,142 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConfigurationCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write the given contents to a file, with the given modification time.
+     *
+     * @param file     The file.
+     * @param contents Contents of the file.
+     * @param modified Modification time in milliseconds.
+     * @throws IOException Throws if failed to write the file.
+     */
+    private static void write(Path file, String contents, long modified) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+    }
+
+    @Test
+    public void sharedUntilModified() throws IOException {
+        final Path file = this.folder.getRoot().toPath().resolve("config.yml");
+        write(file, "a: 1\n", 1000000);
+        final ConfigurationCache cache = new ConfigurationCache(4);
+
+        final YamlConfiguration first = cache.load(file);
+        assertTrue(first.isFrozen());
+        assertEquals(1, first.getInt("a"));
+        assertSame(first, cache.load(file));
+
+        write(file, "a: 2\n", 2000000);
+        final YamlConfiguration second = cache.load(file);
+        assertNotSame(first, second);
+        assertEquals(2, second.getInt("a"));
+
+        cache.invalidate(file);
+        assertEquals(0, cache.size());
+        assertNotSame(second, cache.load(file));
+    }
+
+    @Test
+    public void concurrentLoadsParseOnce() throws IOException {
+        final Path file = this.folder.getRoot().toPath().resolve("config.yml");
+        write(file, "a: 1\n", 1000000);
+        final ConfigurationCache cache = new ConfigurationCache(4);
+
+        // Queue the parse, so the other loads find it pending
+        final List<Runnable> queued = new ArrayList<>();
+        final CompletableFuture<YamlConfiguration> first = cache.loadAsync(file, queued::add);
+        final CompletableFuture<YamlConfiguration> second = cache.loadAsync(file, queued::add);
+        assertSame(first, second);
+        assertEquals(1, queued.size());
+        assertFalse(first.isDone());
+
+        queued.get(0).run();
+        assertEquals(1, first.join().getInt("a"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        final ConfigurationCache cache = new ConfigurationCache(2);
+        final Path[] files = new Path[3];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = this.folder.getRoot().toPath().resolve("config" + i + ".yml");
+            write(files[i], "a: " + i + "\n", 1000000);
+        }
+
+        final YamlConfiguration first = cache.load(files[0]);
+        cache.load(files[1]);
+        cache.load(files[0]);
+        cache.load(files[2]);
+        assertEquals(2, cache.size());
+        assertSame(first, cache.load(files[0]));
+    }
+
+    @Test
+    public void invalidYamlFails() throws IOException {
+        final Path file = this.folder.getRoot().toPath().resolve("config.yml");
+        write(file, "a: [1\n", 1000000);
+        final ConfigurationCache cache = new ConfigurationCache(4);
+
+        try {
+            cache.load(file);
+            fail("Expected invalid YAML to fail the load");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(0, cache.size());
+
+        write(file, "- 1\n", 2000000);
+        try {
+            cache.load(file);
+            fail("Expected a document that isn't a map to fail the load");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void rejectedLoadIsForgotten() throws Exception {
+        final Path file = this.folder.getRoot().toPath().resolve("config.yml");
+        write(file, "a: 1\n", 1000000);
+        final ConfigurationCache cache = new ConfigurationCache(4);
+
+        final CompletableFuture<YamlConfiguration> rejected = cache.loadAsync(file, task -> {
+            throw new RejectedExecutionException("Shut down");
+        });
+        try {
+            rejected.get(1, TimeUnit.SECONDS);
+            fail("Expected the rejected load to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.load(file).getInt("a"));
+    }
+}
@@ -0,0 +1,186 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConfigurationJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Create a configuration with list element sections.
+     *
+     * @return The configuration.
+     */
+    private static YamlConfiguration configuration() {
+        final YamlConfiguration config = new YamlConfiguration();
+        config.setListSectionsEnabled(true);
+        return config;
+    }
+
+    /**
+     * Write the list element configuration file, and open a journal for it.
+     *
+     * @param config Configuration to open the journal for.
+     * @return The journal.
+     * @throws IOException Throws if failed to open the journal.
+     */
+    private ConfigurationJournal open(YamlConfiguration config) throws IOException {
+        final Path file = this.folder.getRoot().toPath().resolve("config.yml");
+        if (!Files.exists(file))
+            Files.write(file, ConfigurationSectionTest.routes(false).saveToString().getBytes("UTF-8"));
+        return ConfigurationJournal.open(config, file);
+    }
+
+    /**
+     * Get the path of the journal file.
+     *
+     * @return Path of the journal.
+     */
+    private Path journalFile() {
+        return this.folder.getRoot().toPath().resolve("config.yml.journal");
+    }
+
+    @Test
+    public void replayListElements() throws IOException {
+        final YamlConfiguration written = configuration();
+        try (ConfigurationJournal journal = open(written)) {
+            written.set("routes[1].host", "x");
+            written.set("routes[0]", null);
+            written.set("routes[0].port", 7);
+            written.set("routes[2].tags.primary", true);
+            written.remove("routes[1].port");
+        }
+
+        final YamlConfiguration replayed = configuration();
+        try (ConfigurationJournal journal = open(replayed)) {
+            assertEquals(written.saveToString(), replayed.saveToString());
+            assertEquals(3, replayed.getList("routes").size());
+            assertEquals(7, replayed.get("routes[0].port"));
+            assertEquals("x", replayed.get("routes[1].host"));
+            assertNull(replayed.getSection("routes").findChild("[0]"));
+        }
+    }
+
+    @Test
+    public void replayRemovedListElement() throws IOException {
+        final YamlConfiguration written = configuration();
+        try (ConfigurationJournal journal = open(written)) {
+            written.remove("routes[0]");
+            written.set("routes[0].host", "x");
+        }
+
+        final YamlConfiguration replayed = configuration();
+        try (ConfigurationJournal journal = open(replayed)) {
+            assertEquals(written.saveToString(), replayed.saveToString());
+            assertEquals(2, replayed.getList("routes").size());
+        }
+    }
+
+    @Test
+    public void zeroTail() throws IOException {
+        final YamlConfiguration written = configuration();
+        try (ConfigurationJournal journal = open(written)) {
+            written.set("routes[1].host", "x");
+        }
+        final long size = Files.size(journalFile());
+        Files.write(journalFile(), new byte[8], StandardOpenOption.APPEND);
+
+        final YamlConfiguration replayed = configuration();
+        try (ConfigurationJournal journal = open(replayed)) {
+            assertEquals("x", replayed.get("routes[1].host"));
+            assertEquals(size, journal.size());
+            replayed.set("routes[2].host", "y");
+        }
+
+        final YamlConfiguration reopened = configuration();
+        try (ConfigurationJournal journal = open(reopened)) {
+            assertEquals("y", reopened.get("routes[2].host"));
+        }
+    }
+
+    @Test
+    public void tornTail() throws IOException {
+        final YamlConfiguration written = configuration();
+        try (ConfigurationJournal journal = open(written)) {
+            written.set("routes[1].host", "x");
+            written.set("routes[2].host", "y");
+        }
+
+        // Cut the last record short, and claim a huge record after a valid one
+        final byte[] bytes = Files.readAllBytes(journalFile());
+        Files.write(journalFile(), Arrays.copyOf(bytes, bytes.length - 3));
+        final YamlConfiguration torn = configuration();
+        try (ConfigurationJournal journal = open(torn)) {
+            assertEquals("x", torn.get("routes[1].host"));
+            assertEquals("c", torn.get("routes[2].host"));
+        }
+        Files.write(journalFile(), new byte[]{0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0},
+            StandardOpenOption.APPEND);
+        final YamlConfiguration huge = configuration();
+        try (ConfigurationJournal journal = open(huge)) {
+            assertEquals("x", huge.get("routes[1].host"));
+        }
+    }
+
+    @Test
+    public void invalidRecord() throws IOException {
+        final YamlConfiguration written = configuration();
+        try (ConfigurationJournal journal = open(written)) {
+            written.set("routes[1].host", "x");
+        }
+
+        // Append a record with a valid checksum, but an unknown record type
+        final byte[] payload = {9, 0, 0, 0, 0};
+        final CRC32 checksum = new CRC32();
+        checksum.update(payload, 0, payload.length);
+        final ByteBuffer record = ByteBuffer.allocate(8 + payload.length)
+            .putInt(payload.length).putInt((int) checksum.getValue()).put(payload);
+        final long size = Files.size(journalFile());
+        Files.write(journalFile(), record.array(), StandardOpenOption.APPEND);
+
+        final YamlConfiguration replayed = configuration();
+        try (ConfigurationJournal journal = open(replayed)) {
+            assertEquals("x", replayed.get("routes[1].host"));
+            assertEquals(size, journal.size());
+        }
+    }
+
+    @Test
+    public void recordWithCorruptSize() throws IOException {
+        final YamlConfiguration written = configuration();
+        try (ConfigurationJournal journal = open(written)) {
+            written.set("routes[1].host", "x");
+        }
+
+        // Append a set record with a valid checksum, holding a list that claims far more elements than it has
+        final byte[] payload = ByteBuffer.allocate(11).put((byte) 1).putInt(1).put((byte) 'a').put((byte) 7)
+            .putInt(Integer.MAX_VALUE).array();
+        final CRC32 checksum = new CRC32();
+        checksum.update(payload, 0, payload.length);
+        final ByteBuffer record = ByteBuffer.allocate(8 + payload.length)
+            .putInt(payload.length).putInt((int) checksum.getValue()).put(payload);
+        final long size = Files.size(journalFile());
+        Files.write(journalFile(), record.array(), StandardOpenOption.APPEND);
+
+        final YamlConfiguration replayed = configuration();
+        try (ConfigurationJournal journal = open(replayed)) {
+            assertEquals("x", replayed.get("routes[1].host"));
+            assertNull(replayed.get("a"));
+            assertEquals(size, journal.size());
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationSectionTest {
+
+    /**
+     * Load a configuration with list element sections.
+     *
+     * @param pathIndex True to enable the path index.
+     * @return The configuration.
+     */
+    static YamlConfiguration routes(boolean pathIndex) {
+        final YamlConfiguration config = new YamlConfiguration();
+        config.setListSectionsEnabled(true);
+        config.setPathIndexEnabled(pathIndex);
+        config.loadFromString("routes:\n"
+            + "- host: a\n  port: 1\n"
+            + "- host: b\n  port: 2\n"
+            + "- host: c\n  port: 3\n");
+        return config;
+    }
+
+    @Test
+    public void removeListElement() {
+        for (boolean pathIndex : new boolean[]{false, true}) {
+            final YamlConfiguration config = routes(pathIndex);
+            final ConfigurationSection removed = config.getSection("routes[0]");
+            final int modCount = config.getModCount();
+
+            assertTrue(config.remove("routes[0]"));
+            assertEquals(modCount + 1, config.getModCount());
+            assertEquals(2, config.getList("routes").size());
+            assertEquals("b", config.get("routes[0].host"));
+            assertEquals("c", config.get("routes[1].host"));
+            assertNull(config.get("routes[2].host"));
+            assertEquals("routes[1].host", config.getSection("routes[1].host").getPath());
+            assertTrue(removed.isRoot());
+            assertEquals("a", removed.get("host"));
+        }
+    }
+
+    @Test
+    public void removeListElementNotifies() {
+        final YamlConfiguration config = routes(true);
+        final List<List<String>> changes = new ArrayList<>();
+        config.addListener("routes", changes::add);
+
+        assertTrue(config.remove("routes[1]", true));
+        assertEquals(1, changes.size());
+        assertEquals("c", config.get("routes[1].host"));
+        assertSame(config.getSection("routes[1]"), config.getList("routes").get(1));
+    }
+
+    @Test
+    public void removeMissingListElement() {
+        final YamlConfiguration config = routes(false);
+        final int modCount = config.getModCount();
+
+        assertFalse(config.remove("routes[3]"));
+        assertFalse(config.remove("routes[0].missing"));
+        assertEquals(modCount, config.getModCount());
+        assertEquals(3, config.getList("routes").size());
+    }
+
+    @Test
+    public void cachedArraysAreShared() {
+        final Configuration config = new Configuration();
+        config.set("ints", Arrays.asList(1, 2, 3));
+        assertArrayEquals(new int[]{1, 2, 3}, config.getIntArray("ints"));
+        assertSame(config.getIntArray("ints"), config.getIntArray("ints"));
+        assertSame(config.getLongArray("ints"), config.getLongArray("ints"));
+
+        config.set("ints", Arrays.asList(4, 5));
+        assertArrayEquals(new int[]{4, 5}, config.getIntArray("ints"));
+        assertArrayEquals(new long[]{4, 5}, config.getLongArray("ints"));
+    }
+
+    @Test
+    public void arraysRejectNarrowing() {
+        final Configuration config = new Configuration();
+        config.set("longs", Arrays.asList(1, 1L << 40));
+        config.set("small", Arrays.asList(1L, (short) 2, new BigInteger("3")));
+        config.set("doubles", Arrays.asList(1, 2.5));
+        config.set("big", Arrays.asList(1, BigInteger.ONE.shiftLeft(70)));
+
+        assertNull(config.getIntArray("longs"));
+        assertArrayEquals(new long[]{1, 1L << 40}, config.getLongArray("longs"));
+        assertArrayEquals(new int[]{1, 2, 3}, config.getIntArray("small"));
+        assertNull(config.getIntArray("doubles"));
+        assertNull(config.getLongArray("doubles"));
+        assertNull(config.getLongArray("big"));
+    }
+
+    @Test
+    public void stringListKeepsIndexes() {
+        final Configuration config = new Configuration();
+        config.set("mixed", Arrays.asList("a", Collections.singletonMap("b", 1), 2, Arrays.asList(3), true));
+        assertEquals(Arrays.asList("a", null, "2", null, "true"), config.getStringList("mixed"));
+        assertEquals(Collections.emptyList(), config.getStringList("missing"));
+    }
+
+    @Test
+    public void sectionListOfListElements() {
+        final YamlConfiguration config = routes(false);
+        final List<ConfigurationSection> routes = config.getSectionList("routes");
+        assertEquals(3, routes.size());
+        assertSame(config.getSection("routes[1]"), routes.get(1));
+
+        // Changes made through the sections are made in the tree
+        routes.get(1).set("host", "x");
+        assertEquals("x", config.get("routes[1].host"));
+        assertEquals("x", config.getSectionList("routes").get(1).get("host"));
+    }
+
+    @Test
+    public void sectionListOfMapsIsNotShared() {
+        final YamlConfiguration config = new YamlConfiguration();
+        config.loadFromString("routes:\n- host: a\n- host: b\n");
+
+        final List<ConfigurationSection> first = config.getSectionList("routes");
+        assertEquals(2, first.size());
+        assertEquals("b", first.get(1).get("host"));
+        first.get(1).set("host", "x");
+        assertEquals("b", config.getSectionList("routes").get(1).get("host"));
+    }
+
+    @Test
+    public void visitorWalksListElements() {
+        final YamlConfiguration config = new YamlConfiguration();
+        config.setListSectionsEnabled(true);
+        config.loadFromString("routes:\n- host: a\n  tags: [x]\n- host: b\nname: n\n");
+
+        final List<String> events = new ArrayList<>();
+        config.accept(new ConfigurationVisitor() {
+            @Override
+            public boolean enterSection(ConfigurationSection section) {
+                events.add("enter " + section.getPath());
+                return true;
+            }
+
+            @Override
+            public void visitValue(ConfigurationSection section, Object value) {
+                events.add("value " + section.getPath());
+            }
+
+            @Override
+            public void leaveSection(ConfigurationSection section) {
+                events.add("leave " + section.getPath());
+            }
+        });
+        assertEquals(Arrays.asList(
+            "enter ",
+            "value routes",
+            "enter routes[0]", "value routes[0].host", "value routes[0].tags", "leave routes[0]",
+            "enter routes[1]", "value routes[1].host", "leave routes[1]",
+            "value name",
+            "leave "), events);
+
+        // Streams and queries see the same sections holding a value, in the same order
+        final List<String> values = events.stream()
+            .filter(event -> event.startsWith("value "))
+            .map(event -> event.substring(6))
+            .collect(Collectors.toList());
+        assertEquals(values, config.stream().map(ConfigurationSection::getPath).collect(Collectors.toList()));
+        assertEquals(values, config.parallelStream().map(ConfigurationSection::getPath).collect(Collectors.toList()));
+        assertEquals(values, config.query("**").filter(section -> !section.isHoldingConfigurationSections())
+            .map(ConfigurationSection::getPath).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void visitorWalksDeepTree() {
+        final ConfigurationSection root = new ConfigurationSection("", null);
+        ConfigurationSection section = root;
+        for (int i = 0; i < 100000; i++)
+            section = section.createSection("k");
+        section.set("value");
+
+        final int[] counts = new int[3];
+        root.accept(new ConfigurationVisitor() {
+            @Override
+            public boolean enterSection(ConfigurationSection section) {
+                counts[0]++;
+                return true;
+            }
+
+            @Override
+            public void visitValue(ConfigurationSection section, Object value) {
+                assertEquals("value", value);
+                counts[1]++;
+            }
+
+            @Override
+            public void leaveSection(ConfigurationSection section) {
+                counts[2]++;
+            }
+        });
+        assertArrayEquals(new int[]{100000, 1, 100000}, counts);
+        assertEquals(1, root.stream().count());
+    }
+
+    @Test
+    public void pathAfterElementRemoval() {
+        for (boolean pathIndex : new boolean[]{false, true}) {
+            final YamlConfiguration config = routes(pathIndex);
+            final ConfigurationSection removed = config.getSection("routes[0]");
+            final ConfigurationSection moved = config.getSection("routes[2]");
+            final ConfigurationSection host = config.getSection("routes[2].host");
+            assertEquals("routes[2].host", host.getPath());
+
+            // The following elements move up, and the paths cached below them are dropped
+            config.remove("routes[0]");
+            assertEquals("routes[1]", moved.getPath());
+            assertEquals("routes[1].host", host.getPath());
+            assertEquals(3, host.getDepth());
+            assertSame(host, config.getSection("routes[1].host"));
+            assertSame(config, host.getRoot());
+
+            // The removed element is the root of its own tree
+            assertEquals("", removed.getPath());
+            assertEquals("host", removed.getSection("host").getPath());
+            assertEquals(1, removed.getSection("host").getDepth());
+            assertSame(removed, removed.getSection("host").getRoot());
+        }
+    }
+
+    @Test
+    public void pathAfterDetach() {
+        final Configuration config = new Configuration();
+        config.set("a.b.c", 1);
+        final ConfigurationSection a = config.getSection("a");
+        final ConfigurationSection c = config.getSection("a.b.c");
+        assertEquals("a.b.c", c.getPath());
+        assertEquals(3, c.getDepth());
+
+        config.remove("a");
+        assertTrue(a.isRoot());
+        assertEquals("", a.getPath());
+        assertEquals("b.c", c.getPath());
+        assertEquals(2, c.getDepth());
+        assertSame(a, c.getRoot());
+
+        // Sections added to the detached tree get paths relative to it
+        a.set("b.d", 2);
+        assertEquals("b.d", a.getSection("b.d").getPath());
+        assertSame(a, a.getSection("b.d").getRoot());
+    }
+
+    @Test
+    public void mergeStrategies() {
+        final Configuration other = new Configuration();
+        other.set("a.x", 2);
+        other.set("a.y", 3);
+        other.set("list", Arrays.asList(2, 3));
+        other.set("value.nested", 4);
+
+        final MergeStrategy[] strategies = {MergeStrategy.REPLACE, MergeStrategy.APPEND, MergeStrategy.KEEP_EXISTING};
+        final Object[] lists = {Arrays.asList(2, 3), Arrays.asList(1, 2, 3), Arrays.asList(1)};
+        final Object[] xs = {2, 2, 1};
+        final Object[] values = {null, null, "kept"};
+        for (int i = 0; i < strategies.length; i++) {
+            final Configuration config = new Configuration();
+            config.set("a.x", 1);
+            config.set("list", new ArrayList<>(Arrays.asList(1)));
+            config.set("value", "kept");
+            config.merge(other, strategies[i]);
+
+            assertEquals(strategies[i].name(), xs[i], config.get("a.x"));
+            assertEquals(strategies[i].name(), 3, config.get("a.y"));
+            assertEquals(strategies[i].name(), lists[i], config.get("list"));
+            if (values[i] != null)
+                assertEquals(values[i], config.get("value"));
+            else
+                assertEquals(4, config.get("value.nested"));
+        }
+
+        // The merged tree isn't modified, and doesn't share its lists
+        assertEquals(Arrays.asList(2, 3), other.get("list"));
+        final Configuration config = new Configuration();
+        config.merge(other, MergeStrategy.REPLACE);
+        assertTrue(config.get("list") != other.get("list"));
+    }
+
+    /**
+     * Split the given spliterator as far as it can be split, and traverse the parts in order.
+     *
+     * @param spliterator Spliterator to split.
+     * @param out         List to add the traversed sections to.
+     * @return Number of parts the spliterator was split into.
+     */
+    private static int splitAll(Spliterator<ConfigurationSection> spliterator, List<ConfigurationSection> out) {
+        final Spliterator<ConfigurationSection> prefix = spliterator.trySplit();
+        if (prefix == null) {
+            spliterator.forEachRemaining(out::add);
+            return 1;
+        }
+        return splitAll(prefix, out) + splitAll(spliterator, out);
+    }
+
+    @Test
+    public void valuesDeep() {
+        final YamlConfiguration config = routes(false);
+        config.set("a.b", 1);
+        config.set("a.c.d", 2);
+        config.set("e", 3);
+
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("routes", config.getValues().get("routes"));
+        values.put("a.b", 1);
+        values.put("a.c.d", 2);
+        values.put("e", 3);
+        assertEquals(values, config.getValues(true));
+        assertEquals(new ArrayList<>(values.keySet()), new ArrayList<>(config.getValues(true).keySet()));
+
+        // Paths are relative to the section, and sections holding a value return just that
+        final Map<String, Object> section = new LinkedHashMap<>();
+        section.put("b", 1);
+        section.put("c.d", 2);
+        assertEquals(section, config.getSection("a").getValues(true));
+        assertEquals(Collections.singletonMap("e", 3), config.getSection("e").getValues(true));
+        final Map<String, Object> route = new LinkedHashMap<>();
+        route.put("host", "b");
+        route.put("port", 2);
+        assertEquals(route, config.getSection("routes[1]").getValues(true));
+    }
+
+    @Test
+    public void streamSplitsEverything() {
+        final YamlConfiguration config = routes(false);
+        for (int i = 0; i < 20; i++)
+            for (int j = 0; j < i; j++)
+                config.set("wide.s" + i + ".v" + j, j);
+        config.set("deep.a.b.c", 1);
+        final List<ConfigurationSection> sequential = config.stream().collect(Collectors.toList());
+
+        // Splitting as far as possible covers every section exactly once, in order
+        final List<ConfigurationSection> split = new ArrayList<>();
+        assertTrue(splitAll(new SectionSpliterator(config), split) > 10);
+        assertEquals(sequential, split);
+        assertEquals(1 + 6 + 190 + 1, split.size());
+        assertEquals(sequential, config.parallelStream().collect(Collectors.toList()));
+
+        // Sections holding a value are split into nothing but that value
+        final List<ConfigurationSection> leaf = new ArrayList<>();
+        assertEquals(1, splitAll(new SectionSpliterator(config.getSection("deep.a.b.c")), leaf));
+        assertEquals(Collections.singletonList(config.getSection("deep.a.b.c")), leaf);
+    }
+}
@@ -0,0 +1,276 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConfigurationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void removedSectionIsDetached() {
+        final Configuration config = new Configuration();
+        config.setPathIndexEnabled(true);
+        config.set("a.x", 1);
+        final ConfigurationSection section = config.getSection("a");
+        config.remove("a");
+        config.set("a.x", 99);
+
+        // The removed section keeps its own values, and is the root of its own tree
+        assertTrue(section.isRoot());
+        assertSame(section, section.getSection("x").getRoot());
+        assertEquals(1, section.get("x"));
+
+        // Writes to the removed section don't leak into the configuration
+        section.set("y", 2);
+        assertNull(config.get("a.y"));
+        assertEquals(99, config.get("a.x"));
+    }
+
+    @Test
+    public void replacedSectionIsDetached() {
+        final Configuration config = new Configuration();
+        config.setPathIndexEnabled(true);
+        config.set("a.b.c", 1);
+        final ConfigurationSection section = config.getSection("a.b");
+        config.set("a", "value");
+
+        section.set("d", 2);
+        assertEquals("value", config.get("a"));
+        assertNull(config.getSection("a.b"));
+        assertEquals(2, section.get("d"));
+    }
+
+    @Test
+    public void detachedSectionDoesNotNotify() throws Exception {
+        final YamlConfiguration config = new YamlConfiguration();
+        final Path file = this.folder.getRoot().toPath().resolve("config.yml");
+        try (ConfigurationJournal journal = ConfigurationJournal.open(config, file)) {
+            final List<List<String>> changes = new ArrayList<>();
+            config.addListener("**", changes::add);
+            config.set("a.x", 1);
+            final ConfigurationSection section = config.getSection("a");
+            config.remove("a");
+            changes.clear();
+            final long size = journal.size();
+            final int modCount = config.getModCount();
+
+            section.set("y", 2);
+            assertTrue(changes.isEmpty());
+            assertEquals(size, journal.size());
+            assertEquals(modCount, config.getModCount());
+        }
+    }
+
+    @Test
+    public void enablingPathIndexIsNotAModification() throws Exception {
+        final YamlConfiguration config = new YamlConfiguration();
+        final Path file = this.folder.getRoot().toPath().resolve("config.yml");
+        try (ConfigurationJournal journal = ConfigurationJournal.open(config, file)) {
+            final List<List<String>> changes = new ArrayList<>();
+            config.addListener("**", changes::add);
+            config.set("a.b", 1);
+            config.set("c", 2);
+            changes.clear();
+            final long size = journal.size();
+            final int modCount = config.getModCount();
+
+            config.setPathIndexEnabled(true);
+            assertTrue(changes.isEmpty());
+            assertEquals(size, journal.size());
+            assertEquals(modCount, config.getModCount());
+            assertEquals(1, config.get("a.b"));
+            assertSame(config.getSection("a"), config.getIndexedSection("a"));
+        }
+    }
+
+    @Test
+    public void valueIndexWithManySectionsPerValue() {
+        final Configuration config = new Configuration();
+        config.addValueIndex("users.*.role");
+        config.batch(batch -> {
+            for (int i = 0; i < 50000; i++)
+                batch.set("users.u" + i + ".role", "member");
+        });
+        for (int i = 0; i < 50000; i += 2)
+            config.set("users.u" + i + ".role", "admin");
+
+        assertEquals(25000, config.findSections("users.*.role", "member").size());
+        assertEquals(25000, config.findSections("users.*.role", "admin").size());
+        assertEquals("users.u1.role", config.findPaths("users.*.role", "member").get(0));
+    }
+
+    @Test
+    public void frozenSettingsCannotChange() {
+        final Configuration config = new Configuration();
+        config.set("a.b", 1);
+        config.addValueIndex("a.*");
+        config.freeze();
+
+        final Runnable[] changes = {
+            () -> config.setPathIndexEnabled(true),
+            () -> config.addValueIndex("*.b"),
+            () -> config.removeValueIndex("a.*"),
+            () -> config.setCompactStorage(true),
+            () -> config.setKeyInterner(KeyInterner.global()),
+            () -> config.setListSectionsEnabled(true),
+        };
+        for (Runnable change : changes) {
+            try {
+                change.run();
+                fail("Expected a frozen configuration to reject the change");
+            } catch (UnsupportedOperationException e) {
+                // Expected
+            }
+        }
+        assertFalse(config.isPathIndexEnabled());
+        assertEquals(Arrays.asList("a.*"), config.getValueIndexes());
+        assertFalse(config.isCompactStorage());
+        assertNull(config.getKeyInterner());
+        assertFalse(config.isListSectionsEnabled());
+    }
+
+    @Test
+    public void compactSharesKeysAndValues() {
+        final Configuration config = new Configuration();
+        config.setListSectionsEnabled(true);
+        for (int i = 0; i < 3; i++) {
+            config.set("users.u" + i + ".role", new String("member"));
+            config.set("users.u" + i + ".id", Integer.valueOf(1000 + i % 2));
+        }
+        config.set("users.u0.scores", new ArrayList<>(Arrays.asList(1, 2, 3)));
+        final int[] scores = config.getIntArray("users.u0.scores");
+        assertSame(scores, config.getIntArray("users.u0.scores"));
+        final ConfigurationSection role = config.getSection("users.u2.role");
+        assertEquals("users.u2.role", role.getPath());
+
+        // Equal keys and values share a single instance after compacting
+        config.compact();
+        assertSame(config.getSection("users.u0.role").getKey(), config.getSection("users.u1.role").getKey());
+        assertSame(config.get("users.u0.role"), config.get("users.u2.role"));
+        assertSame(config.get("users.u0.id"), config.get("users.u2.id"));
+        assertNotSame(config.get("users.u0.id"), config.get("users.u1.id"));
+
+        // Cached conversions are dropped, and paths are computed again
+        final int[] compacted = config.getIntArray("users.u0.scores");
+        assertNotSame(scores, compacted);
+        assertArrayEquals(scores, compacted);
+        assertEquals("users.u2.role", role.getPath());
+        assertEquals(Arrays.asList("u0", "u1", "u2"), config.getKeys("users"));
+    }
+
+    @Test
+    public void conversionsAreNotCachedOutsideConfigurations() {
+        final ConfigurationSection section = new ConfigurationSection("", null);
+        section.set("list", Arrays.asList(1, 2));
+        assertArrayEquals(new int[]{1, 2}, section.getIntArray("list"));
+        assertNotSame(section.getIntArray("list"), section.getIntArray("list"));
+
+        // Removed sections don't see the conversions cached while they were part of the configuration
+        final Configuration config = new Configuration();
+        config.set("a.list", new ArrayList<>(Arrays.asList(1, 2)));
+        final ConfigurationSection removed = config.getSection("a");
+        assertArrayEquals(new int[]{1, 2}, removed.getIntArray("list"));
+        config.remove("a");
+        removed.set("list", Arrays.asList(3));
+        assertArrayEquals(new int[]{3}, removed.getIntArray("list"));
+    }
+
+    @Test
+    public void mergeIsSingleModification() {
+        final Configuration config = new Configuration();
+        config.set("a.x", 1);
+        config.set("b", Arrays.asList(1));
+        final List<List<String>> changes = new ArrayList<>();
+        config.addListener("**", changes::add);
+        final int modCount = config.getModCount();
+
+        final Configuration other = new Configuration();
+        other.set("a.x", 2);
+        other.set("a.y", 3);
+        other.set("b", Arrays.asList(2));
+        other.set("c.d", 4);
+        config.merge(other, MergeStrategy.APPEND);
+        assertEquals(modCount + 1, config.getModCount());
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).containsAll(Arrays.asList("a.x", "a.y", "b", "c.d")));
+    }
+
+    @Test
+    public void pathIndexFollowsChanges() {
+        final Configuration config = new Configuration();
+        config.setPathIndexEnabled(true);
+        config.set("a.b.c", 1);
+        config.set("a.d", 2);
+        assertSame(config.getSection("a.b.c"), config.getIndexedSection("a.b.c"));
+        assertEquals(1, config.get("a.b.c"));
+        assertEquals(1, config.getSection("a").get("b.c"));
+
+        // Removed and replaced sections are dropped from the index, with all sections below them
+        config.remove("a.b");
+        assertNull(config.getIndexedSection("a.b"));
+        assertNull(config.getIndexedSection("a.b.c"));
+        assertNull(config.get("a.b.c"));
+        config.set("a", "value");
+        assertNull(config.getIndexedSection("a.d"));
+        assertEquals("value", config.get("a"));
+
+        // Disabling the index falls back to walking the tree
+        config.set("a.e", 3);
+        config.setPathIndexEnabled(false);
+        assertEquals(3, config.get("a.e"));
+    }
+
+    @Test
+    public void pathIndexWithListElements() {
+        final YamlConfiguration indexed = ConfigurationSectionTest.routes(true);
+        final YamlConfiguration walked = ConfigurationSectionTest.routes(false);
+        for (YamlConfiguration config : Arrays.asList(indexed, walked)) {
+            config.remove("routes[0]");
+            config.set("routes[1].host", "x");
+        }
+        assertEquals("b", indexed.get("routes[0].host"));
+        assertEquals("x", indexed.get("routes[1].host"));
+        assertNull(indexed.get("routes[2].host"));
+        assertEquals(walked.getValues(true), indexed.getValues(true));
+    }
+
+    @Test
+    public void keyInternerSharesKeys() {
+        final KeyInterner interner = new KeyInterner();
+        final Configuration first = new Configuration();
+        first.setKeyInterner(interner);
+        first.set(new String("users.admin"), 1);
+        final Configuration second = new Configuration();
+        second.setKeyInterner(interner);
+        second.set(new String("users.admin"), 2);
+
+        // Equal keys of configurations using the same interner are the same instance
+        assertSame(first.getSection("users").getKey(), second.getSection("users").getKey());
+        assertSame(first.getSection("users.admin").getKey(), second.getSection("users.admin").getKey());
+        assertEquals(2, interner.size());
+        assertSame(interner.intern("users"), first.getSection("users").getKey());
+        assertNull(interner.intern(null));
+
+        // Keys aren't interned without an interner
+        final Configuration plain = new Configuration();
+        plain.set(new String("users.admin"), 3);
+        assertNotSame(first.getSection("users").getKey(), plain.getSection("users").getKey());
+    }
+}
@@ -0,0 +1,106 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonConfigurationTest {
+
+    /**
+     * Save the given configuration to a string, and load it again.
+     *
+     * @param config Configuration to save.
+     * @return The loaded configuration.
+     * @throws IOException Throws if the saved JSON is invalid.
+     */
+    private static JsonConfiguration roundTrip(Configuration config) throws IOException {
+        final JsonConfiguration json = new JsonConfiguration();
+        json.copyFrom(config);
+        final JsonConfiguration loaded = new JsonConfiguration();
+        loaded.load(new StringReader(json.saveToString()));
+        return loaded;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        final JsonConfiguration config = new JsonConfiguration();
+        config.load(new StringReader("{\"name\": \"a \\\"quoted\\\" \\\\ \\u00e9\\n\\t\\u0001\", "
+            + "\"numbers\": {\"int\": -12, \"long\": 12345678901, \"big\": 123456789012345678901234567890, "
+            + "\"double\": 0.5, \"exponent\": -1.5E-3, \"zero\": 0}, "
+            + "\"list\": [true, false, null, [1, 2], {\"nested\": \"x\"}], \"empty\": {}}"));
+
+        final JsonConfiguration loaded = roundTrip(config);
+        assertEquals("a \"quoted\" \\ \u00e9\n\t\u0001", loaded.get("name"));
+        assertEquals(-12, loaded.get("numbers.int"));
+        assertEquals(12345678901L, loaded.get("numbers.long"));
+        assertEquals(new BigInteger("123456789012345678901234567890"), loaded.get("numbers.big"));
+        assertEquals(0.5, loaded.get("numbers.double"));
+        assertEquals(-1.5E-3, loaded.get("numbers.exponent"));
+        assertEquals(0, loaded.get("numbers.zero"));
+        final Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("nested", "x");
+        assertEquals(Arrays.asList(true, false, null, Arrays.asList(1, 2), nested), loaded.get("list"));
+        assertEquals(config.getValues(), loaded.getValues());
+    }
+
+    @Test
+    public void roundTripTypesWithoutJsonType() throws IOException {
+        final Configuration config = new Configuration();
+        config.set("set", new LinkedHashSet<>(Arrays.asList("a", 1)));
+        config.set("array", new Object[]{"x", 2});
+        config.set("bytes", "hello".getBytes());
+        config.set("date", new Date(0));
+        config.set("builder", new StringBuilder("text"));
+
+        final JsonConfiguration loaded = roundTrip(config);
+        assertEquals(Arrays.asList("a", 1), loaded.get("set"));
+        assertEquals(Arrays.asList("x", 2), loaded.get("array"));
+        assertEquals("aGVsbG8=", loaded.get("bytes"));
+        assertEquals("1970-01-01T00:00:00Z", loaded.get("date"));
+        assertEquals("text", loaded.get("builder"));
+    }
+
+    @Test
+    public void rejectUnrepresentableValues() {
+        for (Object value : new Object[]{Double.NaN, Float.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, new Object(),
+            Collections.singletonList(Double.NaN)}) {
+            final JsonConfiguration config = new JsonConfiguration();
+            config.set("value", value);
+            try {
+                config.saveToString();
+                fail("Expected " + value + " to fail to save");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void rejectInvalidJson() {
+        final String[] documents = {
+            "{\"a\": 01}", "{\"a\": -01}", "{\"a\": 1.}", "{\"a\": 1.e5}", "{\"a\": 1e}", "{\"a\": -}", "{\"a\": .5}",
+            "{\"a\": 1-2}", "{\"a\": \"raw\nnewline\"}", "{\"a\": \"raw\ttab\"}", "{\"a\": 1,}", "{\"a\": [1,]}",
+            "{\"a\": tru}", "{\"a\": \"\\x\"}", "{\"a\": \"unterminated}", "{\"a\": 1} {}", "{'a': 1}",
+        };
+        for (String document : documents) {
+            try {
+                new JsonConfiguration().load(new StringReader(document));
+                fail("Expected " + document + " to be rejected");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+}
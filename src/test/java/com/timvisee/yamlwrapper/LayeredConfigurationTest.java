@@ -0,0 +1,186 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LayeredConfigurationTest {
+
+    /**
+     * Create a base configuration with database settings and a list of routes.
+     *
+     * @return The configuration.
+     */
+    private static Configuration base() {
+        final YamlConfiguration base = new YamlConfiguration();
+        base.setListSectionsEnabled(true);
+        base.loadFromString("db:\n  host: localhost\n  port: 5432\nroutes:\n- host: a\n");
+        return base;
+    }
+
+    @Test
+    public void nestedLayerInvalidatesCache() {
+        final Configuration base = new Configuration();
+        base.set("a", 1);
+        final LayeredConfiguration middle = new LayeredConfiguration(base);
+        final LayeredConfiguration top = new LayeredConfiguration(middle);
+        assertEquals(1, top.get("a"));
+
+        // Modifying the innermost layer must be visible through both layered configurations
+        base.set("a", 2);
+        assertEquals(2, top.get("a"));
+        base.set("b", 3);
+        assertEquals(3, top.get("b"));
+        middle.set("a", 4);
+        assertEquals(4, top.get("a"));
+
+        // Removing through a nested layer must be visible as well
+        middle.remove("b");
+        assertNull(top.get("b"));
+    }
+
+    @Test
+    public void untrackedNestedLayerIsNotCached() {
+        final ConfigurationSection base = new ConfigurationSection("", null);
+        base.set("a", 1);
+        final LayeredConfiguration top = new LayeredConfiguration(new LayeredConfiguration(base));
+        assertEquals(1, top.get("a"));
+        base.set("a", 2);
+        assertEquals(2, top.get("a"));
+    }
+
+    @Test
+    public void overlaySectionsSeeLayers() {
+        final Configuration base = base();
+        final LayeredConfiguration overlay = base.overlay();
+        overlay.set("db.port", 6543);
+
+        // The section of the overlay resolves the values it doesn't override through the base
+        final ConfigurationSection db = overlay.getConfigurationSection("db");
+        assertEquals("localhost", db.getString("host"));
+        assertEquals(6543, db.getInt("port"));
+        assertEquals("db", db.getPath());
+        assertEquals(Arrays.asList("port", "host"), db.getKeys());
+        assertTrue(overlay.isConfigurationSection("routes"));
+        assertNotNull(overlay.getConfigurationSection("routes"));
+        assertNull(overlay.getConfigurationSection("missing"));
+
+        // Setting values through the section sets them in the overlay only
+        db.set("host", "remote");
+        assertEquals("remote", overlay.get("db.host"));
+        assertEquals("localhost", base.get("db.host"));
+        overlay.createConfigurationSection("db").set("user", "admin");
+        assertEquals("admin", overlay.get("db.user"));
+        assertNull(base.get("db.user"));
+
+        // List elements of the base are returned as views, which can't modify the base
+        final ConfigurationSection route = overlay.findListElement("routes", "host", "a");
+        assertEquals("routes[0]", route.getPath());
+        assertEquals("a", route.getString("host"));
+        route.set("host", "b");
+        assertEquals("a", base.get("routes[0].host"));
+        assertEquals("b", overlay.getSectionList("routes").get(0).getString("host"));
+    }
+
+    @Test
+    public void removeHidesLayers() {
+        final Configuration base = base();
+        final LayeredConfiguration overlay = base.overlay();
+        overlay.set("db.user", "admin");
+
+        assertTrue(overlay.remove("db.host"));
+        assertNull(overlay.get("db.host"));
+        assertFalse(overlay.isSet("db.host"));
+        assertEquals(Arrays.asList("user", "port"), overlay.getKeys("db"));
+        assertEquals("localhost", base.get("db.host"));
+
+        // Removing a section hides everything below it, until values are set again
+        assertTrue(overlay.remove("db"));
+        assertNull(overlay.get("db.port"));
+        assertNull(overlay.getConfigurationSection("db"));
+        assertEquals(Collections.singletonList("routes"), overlay.getKeys());
+        overlay.set("db.port", 1);
+        assertEquals(1, overlay.get("db.port"));
+        assertNull(overlay.get("db.user"));
+        assertEquals(Collections.singletonList("port"), overlay.getKeys("db"));
+
+        // Removed paths are kept by copies, and nothing is hidden that no layer has
+        assertNull(overlay.copy().get("db.host"));
+        assertFalse(overlay.remove("missing"));
+    }
+
+    @Test
+    public void valuesAreLayered() {
+        final LayeredConfiguration overlay = base().overlay();
+        overlay.set("db.port", 1);
+        overlay.remove("routes");
+
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("db.port", 1);
+        values.put("db.host", "localhost");
+        assertEquals(values, overlay.getValues(true));
+
+        final ConfigurationSection db = overlay.getConfigurationSection("db");
+        assertEquals(Arrays.asList("port", "host"), Arrays.asList(db.getValues().keySet().toArray()));
+        final ConfigurationSection copy = db.copy();
+        assertEquals("localhost", copy.get("host"));
+        assertEquals(1, copy.get("port"));
+    }
+
+    @Test
+    public void walkingFailsLoudly() {
+        final LayeredConfiguration overlay = base().overlay();
+        final ConfigurationSection db = overlay.getConfigurationSection("db");
+        final List<Runnable> walks = Arrays.asList(
+            overlay::stream,
+            overlay::parallelStream,
+            () -> overlay.query("db.*"),
+            () -> overlay.accept((section, value) -> {
+            }),
+            db::stream,
+            () -> db.query("*"),
+            () -> db.merge(new ConfigurationSection("", null), MergeStrategy.REPLACE)
+        );
+        for (Runnable walk : walks) {
+            try {
+                walk.run();
+                fail("Expected walking a layered configuration to fail");
+            } catch (UnsupportedOperationException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void concurrentCachedReads() throws InterruptedException {
+        final Configuration base = new Configuration();
+        for (int i = 0; i < 1000; i++)
+            base.set("k" + i, i);
+        final LayeredConfiguration layered = new LayeredConfiguration(base);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++)
+                    if (layered.getInt("k" + i) != i)
+                        failed.set(true);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertFalse(failed.get());
+    }
+}
@@ -0,0 +1,52 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ListenerRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void failingListenerDoesNotAbortOthers() throws IOException {
+        final YamlConfiguration config = new YamlConfiguration();
+        final List<List<String>> before = new ArrayList<>();
+        final List<List<String>> after = new ArrayList<>();
+        config.addListener("a", before::add);
+        config.addListener("a", paths -> {
+            throw new IllegalStateException("first");
+        });
+        config.addListener("a", paths -> {
+            throw new IllegalArgumentException("second");
+        });
+        config.addListener("a", after::add);
+
+        try (ConfigurationJournal journal = ConfigurationJournal.open(config,
+            this.folder.getRoot().toPath().resolve("config.yml"))) {
+            final long size = journal.size();
+            try {
+                config.set("a", 1);
+                fail("Expected the listener failure to be thrown");
+            } catch (IllegalStateException e) {
+                assertEquals("first", e.getMessage());
+                assertEquals(1, e.getSuppressed().length);
+            }
+
+            // All listeners are notified, and the journal still records the change
+            assertEquals(Arrays.asList(Arrays.asList("a")), before);
+            assertEquals(Arrays.asList(Arrays.asList("a")), after);
+            assertTrue(journal.size() > size);
+        }
+    }
+}
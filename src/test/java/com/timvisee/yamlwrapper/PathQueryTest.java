@@ -0,0 +1,54 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PathQueryTest {
+
+    /**
+     * Get the paths of the sections matching the given pattern.
+     *
+     * @param section Section to query.
+     * @param pattern The pattern.
+     * @return Paths of the matching sections.
+     */
+    private static List<String> paths(ConfigurationSection section, String pattern) {
+        return section.query(pattern).map(ConfigurationSection::getPath).collect(Collectors.toList());
+    }
+
+    @Test
+    public void queryListElements() {
+        final YamlConfiguration config = ConfigurationSectionTest.routes(false);
+        assertEquals(Arrays.asList("routes[0].host", "routes[1].host", "routes[2].host"), paths(config, "routes[*].host"));
+        assertEquals(Arrays.asList("routes[1].port"), paths(config, "routes[1].port"));
+        assertEquals(Arrays.asList("routes[0].host", "routes[1].host", "routes[2].host"), paths(config, "*.host"));
+        assertEquals(Arrays.asList("", "routes", "routes[0]", "routes[0].host", "routes[0].port", "routes[1]",
+            "routes[1].host", "routes[1].port", "routes[2]", "routes[2].host", "routes[2].port"), paths(config, "**"));
+    }
+
+    @Test
+    public void valueIndexOnListElements() {
+        // Declare the index before loading
+        final YamlConfiguration before = new YamlConfiguration();
+        before.setListSectionsEnabled(true);
+        before.addValueIndex("routes[*].host");
+        before.loadFromString(ConfigurationSectionTest.routes(false).saveToString());
+
+        // Declare the index after loading
+        final YamlConfiguration after = ConfigurationSectionTest.routes(false);
+        after.addValueIndex("routes[*].host");
+
+        for (YamlConfiguration config : Arrays.asList(before, after)) {
+            final List<ConfigurationSection> found = config.findSections("routes[*].host", "b");
+            assertEquals(1, found.size());
+            assertSame(config.getSection("routes[1].host"), found.get(0));
+            assertEquals(Arrays.asList("routes[2].host"), config.findPaths("routes[*].host", "c"));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class PropertiesConfigurationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadNestedProperties() {
+        final PropertiesConfiguration config = new PropertiesConfiguration();
+        final int modCount = config.getModCount();
+        config.loadFromString("database.host=localhost\n"
+            + "name=app\n"
+            + "database.port=5432\n"
+            + "empty..key=value\n"
+            + "replaced=1\n"
+            + "replaced.child=2\n"
+            + "section.child=1\n"
+            + "section=2\n");
+
+        assertEquals(modCount + 1, config.getModCount());
+        assertEquals(Arrays.asList("database", "name", "empty", "replaced", "section"), config.getKeys());
+        assertEquals(Arrays.asList("host", "port"), config.getKeys("database"));
+        assertEquals("5432", config.get("database.port"));
+        assertEquals("value", config.get("empty.key"));
+        assertEquals("2", config.get("replaced.child"));
+        assertEquals("2", config.get("section"));
+    }
+
+    @Test
+    public void roundTrip() {
+        final PropertiesConfiguration config = new PropertiesConfiguration();
+        config.set("a.b", "1");
+        config.set("a.c d", "x = y");
+        config.set("e", "é");
+
+        final PropertiesConfiguration loaded = new PropertiesConfiguration();
+        loaded.loadFromString(config.saveToString());
+        assertEquals(config.getValues(true), loaded.getValues(true));
+    }
+
+    @Test
+    public void fileRoundTrip() throws Exception {
+        final PropertiesConfiguration config = new PropertiesConfiguration();
+        config.set("a.b", "1");
+        config.set("a.c d", " leading = and : #hash");
+        config.set("e", "h\u00e9llo \u2713");
+        config.set("f", "line\nbreak\ttab\\");
+        final Path path = this.folder.getRoot().toPath().resolve("config.properties");
+        config.save(path);
+
+        // Files are read back the same, both by this configuration and by properties
+        final PropertiesConfiguration loaded = new PropertiesConfiguration();
+        loaded.load(path);
+        assertEquals(config.getValues(true), loaded.getValues(true));
+        final Properties properties = new Properties();
+        try (InputStream stream = Files.newInputStream(path)) {
+            properties.load(stream);
+        }
+        assertEquals(4, properties.size());
+        for (String key : properties.stringPropertyNames())
+            assertEquals(key, config.get(key), properties.getProperty(key));
+
+        // Compressed files are read back the same as well
+        config.setCompressOutput(true);
+        config.save(path);
+        final PropertiesConfiguration decompressed = new PropertiesConfiguration();
+        decompressed.load(path);
+        assertEquals(config.getValues(true), decompressed.getValues(true));
+    }
+}
@@ -0,0 +1,296 @@
+package com.timvisee.yamlwrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class YamlConfigurationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * YAML with tagged collections.
+     */
+    private static final String TAGGED = "set: !!set {a, b, 1}\n"
+        + "omap: !!omap [x: 1, y: {z: 2}]\n"
+        + "pairs: !!pairs [x: 1, x: 2]\n"
+        + "map: !!map {k: v}\n"
+        + "seq: !!seq [1, 2]\n";
+
+    /**
+     * Load the given YAML.
+     *
+     * @param yaml     The YAML.
+     * @param safeMode True to load it in safe mode.
+     * @return The configuration.
+     */
+    private static YamlConfiguration load(String yaml, boolean safeMode) {
+        final YamlConfiguration config = new YamlConfiguration();
+        config.setSafeMode(safeMode);
+        config.loadFromString(yaml);
+        return config;
+    }
+
+    @Test
+    public void safeModeTaggedCollections() {
+        final YamlConfiguration normal = load(TAGGED, false);
+        final YamlConfiguration safe = load(TAGGED, true);
+
+        assertEquals(normal.saveToString(), safe.saveToString());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("a", "b", 1)), safe.get("set"));
+        assertEquals(normal.get("set"), safe.get("set"));
+        assertEquals(normal.getKeys("omap"), safe.getKeys("omap"));
+        assertEquals(2, safe.get("omap.y.z"));
+        assertEquals(normal.get("map.k"), safe.get("map.k"));
+        assertEquals(normal.getList("seq"), safe.getList("seq"));
+        final List<?> normalPairs = normal.getList("pairs");
+        final List<?> safePairs = safe.getList("pairs");
+        assertEquals(normalPairs.size(), safePairs.size());
+        for (int i = 0; i < safePairs.size(); i++)
+            assertArrayEquals((Object[]) normalPairs.get(i), (Object[]) safePairs.get(i));
+    }
+
+    @Test
+    public void safeModeRejectsMismatchedTags() {
+        assertTrue(load("a: !!omap {x: 1}\n", true).getKeys().isEmpty());
+        assertTrue(load("a: !!set [1]\n", true).getKeys().isEmpty());
+    }
+
+    @Test
+    public void outputCacheInvalidation() {
+        final String yaml = "a:\n    x: 1\nb:\n    y: 2\nc: 3\n";
+        final YamlConfiguration config = new YamlConfiguration();
+        config.setOutputCacheEnabled(true);
+        config.loadFromString(yaml);
+        assertEquals(yaml, config.saveToString());
+
+        // Modified, added and removed top-level sections are serialized again
+        config.set("a.x", 5);
+        assertEquals("a:\n    x: 5\nb:\n    y: 2\nc: 3\n", config.saveToString());
+        config.set("b.z", 4);
+        config.remove("c");
+        config.set("d", 6);
+        assertEquals("a:\n    x: 5\nb:\n    y: 2\n    z: 4\nd: 6\n", config.saveToString());
+
+        // Changing the format discards all cached output
+        config.setIndent(2);
+        assertEquals("a:\n  x: 5\nb:\n  y: 2\n  z: 4\nd: 6\n", config.saveToString());
+
+        // Loaded values are serialized again, the output matches that of an uncached copy
+        config.setIndent(4);
+        config.loadFromString("a:\n    x: 7\n");
+        assertEquals("a:\n    x: 7\nb:\n    y: 2\n    z: 4\nd: 6\n", config.saveToString());
+        final YamlConfiguration uncached = config.copy();
+        uncached.setOutputCacheEnabled(false);
+        assertEquals(uncached.saveToString(), config.saveToString());
+    }
+
+    @Test
+    public void frozenSavesConcurrently() throws Exception {
+        final YamlConfiguration config = new YamlConfiguration();
+        config.setOutputCacheEnabled(true);
+        for (int i = 0; i < 100; i++)
+            config.set("s" + i + ".values", Arrays.asList(i, i + 1, "v" + i));
+        final String expected = config.copy().saveToString();
+        config.freeze();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> saves = new ArrayList<>();
+            for (int i = 0; i < 32; i++)
+                saves.add(executor.submit(config::saveToString));
+            for (Future<String> save : saves)
+                assertEquals(expected, save.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void lazyStrings() {
+        final String yaml = "a:\n    name: plain\n    quoted: \"with\\tescape\"\n    list: [x, y]\nb: other\n";
+        final YamlConfiguration lazy = new YamlConfiguration();
+        lazy.setLazyStrings(true);
+        lazy.loadFromString(yaml);
+        final YamlConfiguration eager = load(yaml, false);
+
+        // Plain values reference the source until they're read, escaped values are strings right away
+        assertTrue(lazy.getSection("a.name").getRawValue() instanceof SourceSlice);
+        assertTrue(lazy.getSection("a.quoted").getRawValue() instanceof String);
+        assertEquals("with\tescape", lazy.get("a.quoted"));
+        assertEquals(eager.getValues(true), lazy.getValues(true));
+        assertEquals(eager.saveToString(), lazy.saveToString());
+        assertEquals("plain", lazy.getString("a.name"));
+        assertTrue(lazy.getSection("a.name").getRawValue() instanceof String);
+
+        // Frozen configurations keep the slices, and create the string on each read
+        final YamlConfiguration frozen = new YamlConfiguration();
+        frozen.setLazyStrings(true);
+        frozen.loadFromString(yaml);
+        frozen.freeze();
+        assertEquals("other", frozen.getString("b"));
+        assertEquals(eager.getValues(true), frozen.getValues(true));
+        assertTrue(frozen.getSection("b").getRawValue() instanceof SourceSlice);
+        assertTrue(frozen.copy().getSection("b").getRawValue() instanceof String);
+    }
+
+    @Test
+    public void streamDocuments() {
+        final String yaml = "a: 1\n---\nb: &x [1, 2]\nc: *x\n---\n- not a map\n---\nd: {e: f}\n";
+        for (boolean safeMode : new boolean[]{false, true}) {
+            final YamlConfiguration settings = new YamlConfiguration();
+            settings.setSafeMode(safeMode);
+            settings.setListSectionsEnabled(true);
+            final List<YamlConfiguration> documents = settings.streamDocuments(new StringReader(yaml))
+                .collect(Collectors.toList());
+
+            assertEquals(4, documents.size());
+            assertEquals(1, documents.get(0).get("a"));
+            assertEquals(Arrays.asList(1, 2), documents.get(1).get("c"));
+            assertEquals(Collections.emptyList(), documents.get(2).getKeys());
+            assertEquals("f", documents.get(3).get("d.e"));
+            for (YamlConfiguration document : documents) {
+                assertEquals(safeMode, document.isSafeMode());
+                assertTrue(document.isListSectionsEnabled());
+            }
+        }
+    }
+
+    @Test
+    public void streamDocumentsInSafeMode() {
+        final YamlConfiguration settings = new YamlConfiguration();
+        settings.setSafeMode(true);
+        final List<Object> values = new ArrayList<>();
+        try {
+            settings.streamDocuments(new StringReader("a: 1\n---\nb: !!java.lang.Object {}\n"))
+                .forEach(document -> values.add(document.get("a")));
+            fail("Expected custom tags to be rejected in safe mode");
+        } catch (YAMLException e) {
+            // Expected
+        }
+        assertEquals(Collections.singletonList(1), values);
+    }
+
+    @Test
+    public void loadsAsUtf8() throws Exception {
+        final String yaml = "name: h\u00e9llo \u2713\n";
+        final Path path = this.folder.getRoot().toPath().resolve("config.yml");
+        Files.write(path, yaml.getBytes(StandardCharsets.UTF_8));
+        final File file = path.toFile();
+
+        final YamlConfiguration fromFile = new YamlConfiguration();
+        fromFile.load(file);
+        final YamlConfiguration fromPath = new YamlConfiguration();
+        fromPath.load(path);
+        final YamlConfiguration partial = new YamlConfiguration();
+        partial.load(path, Collections.singleton("name"));
+        final String streamed;
+        try (Stream<YamlConfiguration> documents = new YamlConfiguration().streamDocuments(path)) {
+            streamed = documents.findFirst().get().getString("name");
+        }
+
+        final String expected = "h\u00e9llo \u2713";
+        assertEquals(expected, fromFile.getString("name"));
+        assertEquals(expected, fromPath.getString("name"));
+        assertEquals(expected, partial.getString("name"));
+        assertEquals(expected, streamed);
+
+        // Saving writes UTF-8 as well
+        fromPath.save(path);
+        assertTrue(new String(Files.readAllBytes(path), StandardCharsets.UTF_8).contains(expected));
+    }
+
+    @Test
+    public void partialLoad() throws Exception {
+        final String yaml = "database:\n  host: localhost\n  port: 5432\n"
+            + "tenants:\n"
+            + "  a:\n    name: A\n    limits: {users: 10}\n"
+            + "  b:\n    name: B\n    limits: {users: 20, routes: [x, y]}\n"
+            + "other: [1, {skipped: true}]\n";
+        final Path path = this.folder.getRoot().toPath().resolve("config.yml");
+        Files.write(path, yaml.getBytes(StandardCharsets.UTF_8));
+
+        // Only the included sections are loaded, with everything below them
+        final YamlConfiguration partial = new YamlConfiguration();
+        partial.load(path, new LinkedHashSet<>(Arrays.asList("database", "tenants.*.limits")));
+        assertEquals(Arrays.asList("database", "tenants"), partial.getKeys());
+        assertEquals(Arrays.asList("host", "port"), partial.getKeys("database"));
+        assertEquals(Collections.singletonList("limits"), partial.getKeys("tenants.a"));
+        assertEquals(20, partial.get("tenants.b.limits.users"));
+        assertEquals(Arrays.asList("x", "y"), partial.get("tenants.b.limits.routes"));
+
+        // Loading everything gives the same values as a regular load
+        final YamlConfiguration full = new YamlConfiguration();
+        full.load(path, null);
+        assertEquals(load(yaml, false).getValues(), full.getValues());
+        final YamlConfiguration none = new YamlConfiguration();
+        none.load(path, Collections.singleton("missing"));
+        assertTrue(none.getKeys().isEmpty());
+    }
+
+    @Test
+    public void compressedRoundTrip() throws Exception {
+        final YamlConfiguration config = load("a:\n  b: 1\nlist: [x, y]\n", false);
+        config.setCompressOutput(true);
+        final Path path = this.folder.getRoot().toPath().resolve("config.yml.gz");
+        config.save(path);
+        final byte[] bytes = Files.readAllBytes(path);
+        assertEquals(0x1F, bytes[0] & 0xFF);
+        assertEquals(0x8B, bytes[1] & 0xFF);
+
+        // Compressed files are detected whether compression is enabled or not, and copies keep the setting
+        final YamlConfiguration loaded = new YamlConfiguration();
+        loaded.load(path);
+        assertEquals(config.getValues(), loaded.getValues());
+        final YamlConfiguration partial = new YamlConfiguration();
+        partial.load(path, Collections.singleton("a"));
+        assertEquals(1, partial.get("a.b"));
+        assertTrue(config.copy().isCompressOutput());
+
+        // Configurations without compression save plain files
+        final Path plain = path.resolveSibling("config.yml");
+        loaded.save(plain);
+        assertEquals(config.saveToString(), new String(Files.readAllBytes(plain), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void rejectZstandard() throws Exception {
+        final Path path = this.folder.getRoot().toPath().resolve("config.yml.zst");
+        Files.write(path, new byte[]{0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, 0, 0, 0, 0});
+        for (int i = 0; i < 2; i++) {
+            try {
+                if (i == 0)
+                    new YamlConfiguration().load(path);
+                else
+                    new YamlConfiguration().load(path, null);
+                fail("Expected Zstandard compressed files to be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Zstandard"));
+            }
+        }
+    }
+}